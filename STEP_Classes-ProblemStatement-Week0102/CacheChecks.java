@@ -0,0 +1,435 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Behaviour checks for the concurrent paths of MultiLevelCacheSystem: loader
+ * fills racing with writes, write-behind flushing, the off-heap L1 with its
+ * slab generations and zero-copy reads, per-viewer prefetch history, and L2
+ * compaction unmapping the segments it retires. Each check throws
+ * IllegalStateException on the first violation; a clean run prints one "ok"
+ * line per check.
+ *
+ * Usage: java CacheChecks
+ */
+public class CacheChecks {
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new IllegalStateException(message);
+    }
+
+    // Source of record backed by a map; store() fails while failingStores > 0
+    private static class MapLoader implements MultiLevelCacheSystem.VideoLoader {
+        final Map<String, MultiLevelCacheSystem.VideoData> rows = new ConcurrentHashMap<>();
+        final AtomicInteger failingStores = new AtomicInteger();
+
+        public MultiLevelCacheSystem.VideoData load(String videoId) {
+            return rows.get(videoId);
+        }
+
+        public void store(MultiLevelCacheSystem.VideoData video) {
+            if (failingStores.getAndDecrement() > 0) throw new IllegalStateException("database down");
+            rows.put(video.videoId, video);
+        }
+
+        public void delete(String videoId) {
+            rows.remove(videoId);
+        }
+    }
+
+    private static MultiLevelCacheSystem cacheOver(MultiLevelCacheSystem.VideoLoader loader) {
+        return new MultiLevelCacheSystem(loader, VideoDiskStore.createTemp("video-l2-check-"),
+                1 << 20, MultiLevelCacheSystem.HEAP_WEIGHER, 1 << 20, MultiLevelCacheSystem.DISK_WEIGHER);
+    }
+
+    // --- A miss that read the old row before a putVideo must not cache that row ---
+    private static void staleFillLosesToWrite(MultiLevelCacheSystem.WriteMode mode) throws InterruptedException {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        MapLoader loader = new MapLoader() {
+            @Override
+            public MultiLevelCacheSystem.VideoData load(String videoId) {
+                MultiLevelCacheSystem.VideoData row = super.load(videoId);
+                reading.countDown();
+                awaitQuietly(written); // the write lands while this row is in flight
+                return row;
+            }
+        };
+        loader.rows.put("v", new MultiLevelCacheSystem.VideoData("v", "old"));
+
+        MultiLevelCacheSystem cache = cacheOver(loader);
+        cache.setWriteMode(mode);
+        Thread reader = Thread.ofPlatform().start(() -> cache.getVideo("v"));
+        awaitQuietly(reading);
+        cache.putVideo("v", "new");
+        written.countDown();
+        reader.join();
+
+        String content = cache.getVideo("v").content;
+        cache.close();
+        check(content.equals("new"), mode + ": stale fill overwrote the write, got " + content);
+    }
+
+    // --- A promotion whose L2 read predates a putVideo must not put the old version in L1 ---
+    private static void stalePromotionLosesToWrite() throws ReflectiveOperationException {
+        MapLoader loader = new MapLoader();
+        loader.rows.put("v", new MultiLevelCacheSystem.VideoData("v", "old"));
+        MultiLevelCacheSystem cache = cacheOver(loader);
+        cache.getVideo("v"); // L3 → L2
+        int index = MultiLevelCacheSystem.CacheTier.segmentIndex("v");
+
+        // getVideo's two steps with the write landing in between
+        Method readL2 = MultiLevelCacheSystem.class.getDeclaredMethod("readL2", int.class, String.class);
+        Method promoteToL1 = MultiLevelCacheSystem.class.getDeclaredMethod("promoteToL1", int.class,
+                MultiLevelCacheSystem.CacheEntry.class);
+        readL2.setAccessible(true);
+        promoteToL1.setAccessible(true);
+        Object candidate = readL2.invoke(cache, index, "v");
+        cache.putVideo("v", "new");
+        promoteToL1.invoke(cache, index, candidate);
+
+        String content = cache.getVideo("v").content;
+        cache.close();
+        check(content.equals("new"), "stale promotion overwrote the write, got " + content);
+    }
+
+    // --- A write-behind store racing deleteVideo must not bring the row back ---
+    private static void flushDoesNotResurrectDelete() throws InterruptedException {
+        CountDownLatch storing = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        MapLoader loader = new MapLoader() {
+            @Override
+            public void store(MultiLevelCacheSystem.VideoData video) {
+                storing.countDown();
+                awaitQuietly(proceed); // the delete arrives while this store is in flight
+                super.store(video);
+            }
+        };
+        MultiLevelCacheSystem cache = cacheOver(loader);
+        cache.setWriteMode(MultiLevelCacheSystem.WriteMode.WRITE_BEHIND);
+        cache.putVideo("v", "doomed");
+        awaitQuietly(storing);
+
+        Thread deleter = Thread.ofPlatform().start(() -> cache.deleteVideo("v"));
+        deleter.join(200); // old code: the delete completes here, before the store it raced
+        proceed.countDown();
+        deleter.join();
+        cache.close();
+        check(!loader.rows.containsKey("v"), "flush stored a deleted video");
+    }
+
+    // --- A failing store stays queued and the flusher keeps running ---
+    private static void writeBehindSurvivesFailingStore() throws InterruptedException {
+        MapLoader loader = new MapLoader();
+        loader.failingStores.set(3);
+        MultiLevelCacheSystem cache = cacheOver(loader);
+        cache.setWriteMode(MultiLevelCacheSystem.WriteMode.WRITE_BEHIND);
+        cache.putVideo("first", "1");
+        cache.putVideo("second", "2");
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (loader.rows.size() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        cache.close();
+        check(loader.rows.size() == 2, "write-behind lost or stopped, stored " + loader.rows.keySet());
+        check(cache.getFailedFlushes() >= 3, "failed stores not counted");
+    }
+
+    // --- A freed chunk's old handle fails instead of reading the next owner's bytes ---
+    private static void staleChunkHandleFails() {
+        SlabAllocator slabs = new SlabAllocator(64 * 1024, 4096);
+        SlabAllocator.Chunk first = slabs.allocate(100);
+        first.write(new byte[]{1, 2, 3});
+        check(slabs.free(first), "free of a live chunk refused");
+
+        SlabAllocator.Chunk second = slabs.allocate(100);
+        check(second.offset == first.offset && second.slab == first.slab, "chunk not recycled, check is vacuous");
+        second.write(new byte[]{9, 9, 9});
+
+        check(!first.isLive(), "old handle still live after recycling");
+        check(throwsIllegalState(() -> first.view(3)), "view through a recycled handle succeeded");
+        check(throwsIllegalState(() -> first.read(new byte[3])), "read through a recycled handle succeeded");
+        check(!slabs.free(first), "double free accepted");
+        check(second.isLive() && second.view(3).get(0) == 9, "new owner lost its chunk");
+    }
+
+    // --- Concurrent allocate/write/read/free: no chunk is handed to two owners ---
+    private static void slabsNeverShareChunks() throws InterruptedException {
+        SlabAllocator slabs = new SlabAllocator(4L * 1024 * 1024, 64 * 1024);
+        int threads = 4;
+        List<Thread> workers = new ArrayList<>();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            byte mark = (byte) (t + 1);
+            workers.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<SlabAllocator.Chunk> held = new ArrayList<>();
+                List<Integer> lengths = new ArrayList<>();
+                for (int i = 0; i < 50_000; i++) {
+                    if (held.size() < 32 && random.nextBoolean()) {
+                        int length = 1 + random.nextInt(2_000);
+                        SlabAllocator.Chunk chunk = slabs.allocate(length);
+                        if (chunk == null) continue;
+                        byte[] payload = new byte[length];
+                        Arrays.fill(payload, mark);
+                        chunk.write(payload);
+                        held.add(chunk);
+                        lengths.add(length);
+                    } else if (!held.isEmpty()) {
+                        int n = random.nextInt(held.size());
+                        SlabAllocator.Chunk chunk = held.remove(n);
+                        byte[] payload = new byte[lengths.remove(n)];
+                        chunk.read(payload);
+                        for (byte b : payload) {
+                            if (b != mark) {
+                                failures.add("chunk overwritten by another owner");
+                                break;
+                            }
+                        }
+                        if (!slabs.free(chunk)) failures.add("live chunk refused by free");
+                    }
+                }
+                for (SlabAllocator.Chunk chunk : held) slabs.free(chunk);
+            }));
+        }
+        for (Thread worker : workers) worker.join();
+        check(failures.isEmpty(), failures.isEmpty() ? "" : failures.get(0));
+        check(slabs.bytesInUse() == 0, "bytes in use after freeing everything: " + slabs.bytesInUse());
+    }
+
+    // --- getVideo hands out heap copies that outlive the L1 entry and its chunk ---
+    private static void offHeapReadsSurviveEviction() {
+        MultiLevelCacheSystem cache = cacheOver(new MapLoader());
+        cache.enableOffHeapL1(4096);
+        cache.addToDatabase("a", "first payload");
+        cache.getVideo("a");
+        cache.getVideo("a"); // L3 → L2, then L2 → L1
+        MultiLevelCacheSystem.VideoData copy = cache.getVideo("a");
+
+        cache.invalidate("a"); // frees the chunk
+        for (int i = 0; i < 200; i++) {
+            cache.addToDatabase("b" + i, "other payload " + i);
+            cache.getVideo("b" + i);
+            cache.getVideo("b" + i); // recycles freed chunks
+        }
+        String content = copy.content();
+        cache.close();
+        check(!(copy instanceof MultiLevelCacheSystem.OffHeapVideo), "getVideo returned a slab handle");
+        check(content.equals("first payload"), "copy changed after eviction: " + content);
+    }
+
+    // --- readVideo reads off-heap hits in place and reruns a read whose chunk was recycled ---
+    private static void zeroCopyReadsAreChecked() {
+        MultiLevelCacheSystem cache = cacheOver(new MapLoader());
+        cache.enableOffHeapL1(4096);
+        cache.addToDatabase("a", "first payload");
+        cache.addToDatabase("b", "other payload");
+        cache.getVideo("a");
+        cache.getVideo("a"); // L3 → L2, then L2 → L1
+
+        boolean[] direct = new boolean[1];
+        String first = cache.readVideo("a", payload -> {
+            direct[0] = payload.isDirect() && payload.isReadOnly();
+            return StandardCharsets.UTF_8.decode(payload).toString();
+        });
+        check(direct[0], "off-heap hit was not read in place");
+        check(first.equals("first payload"), "in-place read got " + first);
+
+        // The reader itself gets the chunk recycled under it: its result must not be used
+        int[] calls = new int[1];
+        String second = cache.readVideo("a", payload -> {
+            if (calls[0]++ == 0) {
+                cache.invalidate("a"); // frees the chunk
+                cache.getVideo("b");
+                cache.getVideo("b"); // b takes the chunk over
+            }
+            return StandardCharsets.UTF_8.decode(payload).toString();
+        });
+        cache.close();
+        check(calls[0] == 2, "reader ran " + calls[0] + " time(s) for a recycled chunk");
+        check(second.equals("first payload"), "read through a recycled chunk returned " + second);
+    }
+
+    // --- A promotion with no chunk available evicts nothing ---
+    private static void failedPromotionEvictsNothing() {
+        int segmentBytes = 32 * 1024;
+        MultiLevelCacheSystem cache = new MultiLevelCacheSystem(new MapLoader(), VideoDiskStore.createTemp("video-l2-check-"),
+                (long) segmentBytes * 64, MultiLevelCacheSystem.HEAP_WEIGHER, 1 << 24, MultiLevelCacheSystem.DISK_WEIGHER);
+        cache.enableOffHeapL1(4096); // 4 KB slabs: an 8 KB payload never gets a chunk
+
+        String big = "big";
+        int segment = MultiLevelCacheSystem.CacheTier.segmentIndex(big);
+        cache.addToDatabase(big, "x".repeat(8_000));
+        for (int i = 0, filled = 0; filled < segmentBytes / 128; i++) {
+            String small = "small_" + i;
+            if (MultiLevelCacheSystem.CacheTier.segmentIndex(small) != segment) continue;
+            cache.addToDatabase(small, "s".repeat(100)); // 128-byte chunk
+            cache.getVideo(small);
+            cache.getVideo(small);
+            filled++;
+        }
+
+        long before = cache.getL1Weight();
+        for (int i = 0; i < 10; i++) cache.getVideo(big); // hotter than any small video, still no chunk
+        long after = cache.getL1Weight();
+        cache.close();
+        check(after == before, "L1 weight fell from " + before + " to " + after + " for a promotion that failed");
+    }
+
+    // --- A candidate TinyLFU rejects leaves L1's order and referenced bits alone ---
+    private static void rejectedAdmissionTouchesNothing() throws ReflectiveOperationException {
+        MultiLevelCacheSystem cache = new MultiLevelCacheSystem(new MapLoader(), VideoDiskStore.createTemp("video-l2-check-"),
+                4096L * 64, MultiLevelCacheSystem.HEAP_WEIGHER, 1 << 24, MultiLevelCacheSystem.DISK_WEIGHER);
+        String candidate = "cold";
+        int index = MultiLevelCacheSystem.CacheTier.segmentIndex(candidate);
+        List<String> hot = new ArrayList<>();
+        for (int i = 0; hot.size() < 30; i++) {
+            String videoId = "hot_" + i;
+            if (MultiLevelCacheSystem.CacheTier.segmentIndex(videoId) != index) continue;
+            cache.addToDatabase(videoId, "h".repeat(100));
+            for (int reads = 0; reads < 3; reads++) cache.getVideo(videoId); // L3 → L2 → L1, then hotter than the candidate
+            hot.add(videoId);
+        }
+        Field field = MultiLevelCacheSystem.class.getDeclaredField("L1Cache");
+        field.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        MultiLevelCacheSystem.Segment<MultiLevelCacheSystem.VideoData> l1 =
+                ((MultiLevelCacheSystem.CacheTier<MultiLevelCacheSystem.VideoData>) field.get(cache)).segment(index);
+        for (String videoId : l1.map.keySet()) cache.getVideo(videoId); // sets every referenced bit
+        List<String> order = new ArrayList<>(l1.map.keySet());
+
+        cache.addToDatabase(candidate, "c".repeat(100));
+        cache.getVideo(candidate);
+        cache.getVideo(candidate); // L2 hit, rejected by the full segment
+        boolean admitted = l1.map.containsKey(candidate);
+        boolean allReferenced = l1.map.values().stream().allMatch(entry -> entry.referenced);
+        List<String> after = new ArrayList<>(l1.map.keySet());
+        cache.close();
+        check(!admitted, "cold candidate admitted, check is vacuous");
+        check(allReferenced, "rejected candidate cleared referenced bits");
+        check(after.equals(order), "rejected candidate reordered L1");
+    }
+
+    // --- Two viewers interleaved on one thread each teach their own successors ---
+    private static void prefetchHistoryIsPerViewer() throws ReflectiveOperationException {
+        MapLoader loader = new MapLoader();
+        for (int ep = 1; ep <= 4; ep++) {
+            loader.rows.put("a" + ep, new MultiLevelCacheSystem.VideoData("a" + ep, "show a, episode " + ep));
+            loader.rows.put("b" + ep, new MultiLevelCacheSystem.VideoData("b" + ep, "show b, episode " + ep));
+        }
+        MultiLevelCacheSystem cache = cacheOver(loader);
+        cache.enablePrefetch();
+        for (int round = 0; round < 2; round++) {
+            for (int ep = 1; ep <= 4; ep++) {
+                cache.getVideo("a" + ep, "alice-" + round);
+                cache.getVideo("b" + ep, "bob-" + round);
+                cache.getVideo("a" + ep); // anonymous requests teach nothing
+            }
+        }
+
+        Field field = MultiLevelCacheSystem.class.getDeclaredField("prefetchTable");
+        field.setAccessible(true);
+        MultiLevelCacheSystem.SuccessorTable table = (MultiLevelCacheSystem.SuccessorTable) field.get(cache);
+        cache.close();
+        for (int ep = 1; ep < 4; ep++) {
+            String nextA = table.predict("a" + ep, MultiLevelCacheSystem.PREFETCH_MIN_CONFIDENCE);
+            String nextB = table.predict("b" + ep, MultiLevelCacheSystem.PREFETCH_MIN_CONFIDENCE);
+            check(("a" + (ep + 1)).equals(nextA), "a" + ep + " predicts " + nextA);
+            check(("b" + (ep + 1)).equals(nextB), "b" + ep + " predicts " + nextB);
+        }
+    }
+
+    private static boolean throwsIllegalState(Runnable action) {
+        try {
+            action.run();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+
+    // --- Reads racing compaction see the latest value; retired segments are unmapped once readers leave ---
+    private static void compactionUnmapsRetiredSegments() throws InterruptedException {
+        VideoDiskStore store = VideoDiskStore.createTemp("video-l2-check-", 4096, 60_000);
+        int keys = 16;
+        for (int k = 0; k < keys; k++) store.put("k" + k, recordFor(k));
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger wrong = new AtomicInteger();
+        Thread reader = Thread.ofPlatform().start(() -> {
+            while (!done.get()) {
+                for (int k = 0; k < keys; k++) {
+                    byte[] value = store.get("k" + k);
+                    if (value == null || value[0] != k) wrong.incrementAndGet();
+                }
+            }
+        });
+
+        for (int round = 0; round < 2_000; round++) {
+            for (int k = 0; k < keys; k++) store.put("k" + k, recordFor(k));
+            store.compact();
+        }
+        done.set(true);
+        reader.join();
+        store.compact(); // unmaps what the reader was still inside
+
+        long compacted = store.segmentsCompacted();
+        int stillMapped = store.retiredStillMapped();
+        store.close();
+        check(VideoDiskStore.INVOKE_CLEANER != null, "JDK does not allow explicit unmapping, check is vacuous");
+        check(wrong.get() == 0, wrong.get() + " reads returned the wrong value");
+        check(compacted > 1_000, "only " + compacted + " segments compacted");
+        check(stillMapped == 0, stillMapped + " compacted segments still mapped");
+    }
+
+    private static byte[] recordFor(int key) {
+        byte[] value = new byte[200];
+        Arrays.fill(value, (byte) key);
+        return value;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        staleFillLosesToWrite(MultiLevelCacheSystem.WriteMode.WRITE_AROUND);
+        System.out.println("ok  write-around beats a racing loader fill");
+        staleFillLosesToWrite(MultiLevelCacheSystem.WriteMode.WRITE_THROUGH);
+        System.out.println("ok  write-through beats a racing loader fill");
+        stalePromotionLosesToWrite();
+        System.out.println("ok  promotion never overwrites a newer write");
+        flushDoesNotResurrectDelete();
+        System.out.println("ok  write-behind flush never resurrects a deleted video");
+        writeBehindSurvivesFailingStore();
+        System.out.println("ok  write-behind retries a failing store");
+        staleChunkHandleFails();
+        System.out.println("ok  recycled chunk rejects its old handle");
+        slabsNeverShareChunks();
+        System.out.println("ok  concurrent slab allocation never shares a chunk");
+        offHeapReadsSurviveEviction();
+        System.out.println("ok  off-heap L1 reads survive eviction");
+        zeroCopyReadsAreChecked();
+        System.out.println("ok  zero-copy reads are checked against chunk recycling");
+        failedPromotionEvictsNothing();
+        System.out.println("ok  failed off-heap promotion evicts nothing");
+        rejectedAdmissionTouchesNothing();
+        System.out.println("ok  rejected admission leaves L1 untouched");
+        prefetchHistoryIsPerViewer();
+        System.out.println("ok  prefetch history is kept per viewer");
+        compactionUnmapsRetiredSegments();
+        System.out.println("ok  compaction unmaps retired segments under concurrent reads");
+    }
+}
@@ -0,0 +1,503 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline capacity planner for MultiLevelCacheSystem: streams a trace of video ids
+ * through every (policy, L1 capacity, L2 capacity) combination at once and reports
+ * hit ratios and an estimated mean latency per configuration.
+ *
+ * The trace is read in batches, and each batch is replayed by all configurations in
+ * parallel, so a trace of any length is read once with bounded memory. L1 runs the
+ * policy under test; L1 misses go to an LRU L2 as in MultiLevelCacheSystem, and L2
+ * misses are charged at L3 latency. Capacities are in videos.
+ *
+ * Trace format: one request per line; the video id is the last comma- or
+ * whitespace-separated field, so "timestamp,videoId" logs work as they are.
+ *
+ * Usage: java CacheTraceSimulator [trace=FILE] [policies=LRU,ARC,LIRS,W-TinyLFU]
+ *          [l1=500,1000,2000,5000,10000] [l2=0,20000] [l1ms=0.5] [l2ms=5] [l3ms=150]
+ *   without trace= a synthetic Zipf trace with periodic scans is generated
+ */
+public class CacheTraceSimulator {
+
+    private static final int BATCH = 16_384;
+
+    // --- An eviction policy over video ids, capacity counted in entries ---
+    interface Policy {
+        boolean access(String videoId);  // true on hit; a miss admits the id (or not)
+    }
+
+    static Policy create(String name, int capacity) {
+        return switch (name) {
+            case "LRU" -> new Lru(capacity);
+            case "ARC" -> new Arc(capacity);
+            case "LIRS" -> new Lirs(capacity);
+            case "W-TinyLFU" -> new WindowTinyLfu(capacity);
+            default -> throw new IllegalArgumentException("Unknown policy: " + name);
+        };
+    }
+
+    // Removes and returns the eldest key of an insertion- or access-ordered map
+    private static String pollEldest(LinkedHashMap<String, ?> map) {
+        Iterator<String> keys = map.keySet().iterator();
+        String eldest = keys.next();
+        keys.remove();
+        return eldest;
+    }
+
+    // --- LRU, what MultiLevelCacheSystem does today ---
+    static class Lru implements Policy {
+        private final int capacity;
+        private final LinkedHashMap<String, Boolean> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        Lru(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public boolean access(String videoId) {
+            if (map.get(videoId) != null) return true;
+            if (capacity == 0) return false;
+
+            map.put(videoId, Boolean.TRUE);
+            if (map.size() > capacity) pollEldest(map);
+            return false;
+        }
+    }
+
+    // --- ARC (Megiddo & Modha): recency list T1 and frequency list T2, sized by
+    //     ghost hits in B1/B2 through the adaptive target p ---
+    static class Arc implements Policy {
+        private final int capacity;
+        private final LinkedHashMap<String, Boolean> t1 = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Boolean> t2 = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Boolean> b1 = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Boolean> b2 = new LinkedHashMap<>();
+        private int p = 0;  // target size of T1
+
+        Arc(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public boolean access(String x) {
+            if (capacity == 0) return false;
+
+            if (t1.remove(x) != null || t2.remove(x) != null) {
+                t2.put(x, Boolean.TRUE);
+                return true;
+            }
+
+            if (b1.containsKey(x)) {
+                p = Math.min(capacity, p + Math.max(b2.size() / b1.size(), 1));
+                replace(false);
+                b1.remove(x);
+                t2.put(x, Boolean.TRUE);
+                return false;
+            }
+            if (b2.containsKey(x)) {
+                p = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+                replace(true);
+                b2.remove(x);
+                t2.put(x, Boolean.TRUE);
+                return false;
+            }
+
+            int l1 = t1.size() + b1.size();
+            int total = l1 + t2.size() + b2.size();
+            if (l1 == capacity) {
+                if (t1.size() < capacity) {
+                    pollEldest(b1);
+                    replace(false);
+                } else {
+                    pollEldest(t1);
+                }
+            } else if (total >= capacity) {
+                if (total == 2 * capacity) pollEldest(b2);
+                replace(false);
+            }
+            t1.put(x, Boolean.TRUE);
+            return false;
+        }
+
+        // Move the LRU page of T1 or T2 into its ghost list
+        private void replace(boolean hitInB2) {
+            if (!t1.isEmpty() && (t1.size() > p || (hitInB2 && t1.size() == p))) {
+                b1.put(pollEldest(t1), Boolean.TRUE);
+            } else if (!t2.isEmpty()) {
+                b2.put(pollEldest(t2), Boolean.TRUE);
+            } else if (!t1.isEmpty()) {
+                b1.put(pollEldest(t1), Boolean.TRUE);
+            }
+        }
+    }
+
+    // --- LIRS (Jiang & Zhang): blocks with a short reuse distance (LIR) keep ~99% of
+    //     the space; the rest cycles through a small resident-HIR queue ---
+    static class Lirs implements Policy {
+        static final class Entry {
+            boolean lir;
+            boolean resident = true;
+        }
+
+        private final int capacity;
+        private final int lirCapacity;
+        private final LinkedHashMap<String, Entry> stack = new LinkedHashMap<>();  // S, eldest = bottom
+        private final LinkedHashMap<String, Entry> queue = new LinkedHashMap<>();  // Q, resident HIR
+        private int lirCount = 0;
+        private int nonResidentCount = 0;
+
+        Lirs(int capacity) {
+            this.capacity = capacity;
+            this.lirCapacity = capacity - Math.max(1, capacity / 100);
+        }
+
+        public boolean access(String x) {
+            if (capacity == 0) return false;
+
+            Entry e = stack.get(x);
+            if (e == null) e = queue.get(x);
+
+            if (e != null && e.lir) {
+                toTop(x, e);
+                prune();
+                return true;
+            }
+
+            if (e != null && e.resident) {
+                if (stack.containsKey(x)) {
+                    queue.remove(x);
+                    e.lir = true;
+                    lirCount++;
+                    toTop(x, e);
+                    demoteBottom();
+                } else {
+                    toTop(x, e);
+                    queue.remove(x);
+                    queue.put(x, e);
+                }
+                return true; // resident HIR hit
+            }
+
+            // Miss: warm-up fills LIR space directly
+            if (e == null && lirCount < lirCapacity) {
+                e = new Entry();
+                e.lir = true;
+                lirCount++;
+                stack.put(x, e);
+                return false;
+            }
+
+            if (lirCount + queue.size() >= capacity) {
+                String victim = pollEldest(queue);
+                Entry evicted = stack.get(victim);
+                if (evicted != null) {
+                    evicted.resident = false;
+                    nonResidentCount++;
+                }
+            }
+
+            if (e != null) {
+                // Non-resident HIR still in S: its reuse distance beats the bottom LIR
+                e.resident = true;
+                nonResidentCount--;
+                e.lir = true;
+                lirCount++;
+                toTop(x, e);
+                demoteBottom();
+            } else {
+                e = new Entry();
+                stack.put(x, e);
+                queue.put(x, e);
+            }
+            trimNonResident();
+            return false;
+        }
+
+        private void toTop(String x, Entry e) {
+            stack.remove(x);
+            stack.put(x, e);
+        }
+
+        // Bottom LIR block becomes a resident HIR at the end of Q
+        private void demoteBottom() {
+            Iterator<Map.Entry<String, Entry>> it = stack.entrySet().iterator();
+            Map.Entry<String, Entry> bottom = it.next();
+            it.remove();
+            bottom.getValue().lir = false;
+            lirCount--;
+            queue.put(bottom.getKey(), bottom.getValue());
+            prune();
+        }
+
+        // Keep an LIR block at the bottom of S
+        private void prune() {
+            Iterator<Map.Entry<String, Entry>> it = stack.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next().getValue();
+                if (e.lir) return;
+                it.remove();
+                if (!e.resident) nonResidentCount--;
+            }
+        }
+
+        // Bound the ghost entries kept in S so memory stays proportional to capacity
+        private void trimNonResident() {
+            if (nonResidentCount <= 2 * capacity) return;
+            Iterator<Map.Entry<String, Entry>> it = stack.entrySet().iterator();
+            while (nonResidentCount > capacity && it.hasNext()) {
+                if (!it.next().getValue().resident) {
+                    it.remove();
+                    nonResidentCount--;
+                }
+            }
+        }
+    }
+
+    // --- W-TinyLFU (Einziger, Friedman & Manes): 1% LRU window in front of a
+    //     segmented LRU; window victims enter the main area only if the
+    //     frequency sketch rates them above the main area's victim ---
+    static class WindowTinyLfu implements Policy {
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final int protectedCapacity;
+        private final MultiLevelCacheSystem.FrequencySketch sketch;
+        private final LinkedHashMap<String, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, Boolean> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Boolean> protectedSegment = new LinkedHashMap<>();
+
+        WindowTinyLfu(int capacity) {
+            this.windowCapacity = Math.min(capacity, Math.max(1, capacity / 100));
+            this.mainCapacity = capacity - windowCapacity;
+            this.protectedCapacity = (int) (mainCapacity * 0.8);
+            this.sketch = new MultiLevelCacheSystem.FrequencySketch(Math.max(16, capacity));
+        }
+
+        public boolean access(String x) {
+            sketch.increment(x);
+            if (windowCapacity == 0) return false;
+
+            if (window.get(x) != null) return true;
+            if (probation.remove(x) != null) {
+                protectedSegment.put(x, Boolean.TRUE);
+                if (protectedSegment.size() > protectedCapacity) {
+                    probation.put(pollEldest(protectedSegment), Boolean.TRUE);
+                }
+                return true;
+            }
+            if (protectedSegment.remove(x) != null) {
+                protectedSegment.put(x, Boolean.TRUE);
+                return true;
+            }
+
+            window.put(x, Boolean.TRUE);
+            if (window.size() > windowCapacity) admit(pollEldest(window));
+            return false;
+        }
+
+        private void admit(String candidate) {
+            if (mainCapacity == 0) return;
+            if (probation.size() + protectedSegment.size() < mainCapacity) {
+                probation.put(candidate, Boolean.TRUE);
+                return;
+            }
+
+            LinkedHashMap<String, Boolean> victims = probation.isEmpty() ? protectedSegment : probation;
+            String victim = victims.keySet().iterator().next();
+            if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+                victims.remove(victim);
+                probation.put(candidate, Boolean.TRUE);
+            }
+        }
+    }
+
+    // --- One configuration: policy L1 in front of an LRU L2 ---
+    static class Simulation {
+        final String policy;
+        final int l1Capacity;
+        final int l2Capacity;
+        private final Policy l1;
+        private final Lru l2;
+        long requests, l1Hits, l2Hits;
+
+        Simulation(String policy, int l1Capacity, int l2Capacity) {
+            this.policy = policy;
+            this.l1Capacity = l1Capacity;
+            this.l2Capacity = l2Capacity;
+            this.l1 = create(policy, l1Capacity);
+            this.l2 = new Lru(l2Capacity);
+        }
+
+        void replay(List<String> batch) {
+            for (String videoId : batch) {
+                requests++;
+                if (l1.access(videoId)) l1Hits++;
+                else if (l2.access(videoId)) l2Hits++;
+            }
+        }
+
+        double hitRatio() {
+            return requests == 0 ? 0 : (double) (l1Hits + l2Hits) / requests;
+        }
+
+        double meanLatencyMillis(double l1Millis, double l2Millis, double l3Millis) {
+            long misses = requests - l1Hits - l2Hits;
+            return requests == 0 ? 0 : (l1Hits * l1Millis + l2Hits * l2Millis + misses * l3Millis) / requests;
+        }
+    }
+
+    // ---------------------------------------------
+    // Stream the trace once; every batch is replayed by all
+    // configurations in parallel before the next one is read
+    // ---------------------------------------------
+    static long replay(Path trace, List<Simulation> simulations, ExecutorService pool)
+            throws IOException, InterruptedException {
+        Map<String, String> ids = new HashMap<>();  // one String instance per distinct video
+        long requests = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(trace, StandardCharsets.UTF_8)) {
+            List<String> batch = new ArrayList<>(BATCH);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String videoId = videoIdOf(line);
+                if (videoId == null) continue;
+                batch.add(ids.computeIfAbsent(videoId, id -> id));
+                if (batch.size() == BATCH) {
+                    requests += runBatch(batch, simulations, pool);
+                    batch = new ArrayList<>(BATCH);
+                }
+            }
+            requests += runBatch(batch, simulations, pool);
+        }
+        return requests;
+    }
+
+    private static String videoIdOf(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) return null;
+        int cut = Math.max(trimmed.lastIndexOf(','), Math.max(trimmed.lastIndexOf(' '), trimmed.lastIndexOf('\t')));
+        return trimmed.substring(cut + 1);
+    }
+
+    private static int runBatch(List<String> batch, List<Simulation> simulations, ExecutorService pool)
+            throws InterruptedException {
+        if (batch.isEmpty()) return 0;
+
+        List<Callable<Void>> tasks = new ArrayList<>(simulations.size());
+        for (Simulation simulation : simulations) {
+            tasks.add(() -> {
+                simulation.replay(batch);
+                return null;
+            });
+        }
+        for (Future<Void> done : pool.invokeAll(tasks)) {
+            try {
+                done.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return batch.size();
+    }
+
+    // --- Synthetic trace: Zipf popularity plus a one-off scan every 100k requests ---
+    static Path syntheticTrace(int length, int videos) throws IOException {
+        Path file = Files.createTempFile("video-trace-", ".log");
+        int[] zipf = MultiLevelCacheSystem.zipfTrace(length, videos, 0.9, 7);
+        int scanned = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < length; i++) {
+                if (i % 100_000 < 5_000 && i >= 100_000) {
+                    writer.write("scan_" + scanned++);
+                } else {
+                    writer.write("video_" + zipf[i]);
+                }
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    private static String arg(String[] args, String key, String fallback) {
+        for (String a : args) {
+            if (a.startsWith(key + "=")) return a.substring(key.length() + 1);
+        }
+        return fallback;
+    }
+
+    private static int[] ints(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String[] policies = arg(args, "policies", "LRU,ARC,LIRS,W-TinyLFU").split(",");
+        int[] l1Sizes = ints(arg(args, "l1", "500,1000,2000,5000,10000"));
+        int[] l2Sizes = ints(arg(args, "l2", "0,20000"));
+        double l1Millis = Double.parseDouble(arg(args, "l1ms", "0.5"));
+        double l2Millis = Double.parseDouble(arg(args, "l2ms", "5"));
+        double l3Millis = Double.parseDouble(arg(args, "l3ms", "150"));
+
+        String traceArg = arg(args, "trace", null);
+        Path trace = traceArg != null ? Path.of(traceArg) : syntheticTrace(2_000_000, 100_000);
+
+        List<Simulation> simulations = new ArrayList<>();
+        for (int l2 : l2Sizes) {
+            for (String policy : policies) {
+                for (int l1 : l1Sizes) simulations.add(new Simulation(policy.trim(), l1, l2));
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        long requests;
+        try {
+            requests = replay(trace, simulations, pool);
+        } finally {
+            pool.shutdown();
+            if (traceArg == null) Files.deleteIfExists(trace);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Replayed %,d requests through %d configurations in %.1f s%n",
+                requests, simulations.size(), seconds);
+
+        // Hit-ratio curves: one row per policy and L2 size, one column per L1 capacity
+        System.out.printf("%nHit ratio (L1+L2) by L1 capacity%n%-10s %8s", "policy", "L2");
+        for (int l1 : l1Sizes) System.out.printf(" %9s", "L1=" + l1);
+        System.out.println();
+        for (int i = 0; i < simulations.size(); i += l1Sizes.length) {
+            Simulation first = simulations.get(i);
+            System.out.printf("%-10s %8d", first.policy, first.l2Capacity);
+            for (int j = 0; j < l1Sizes.length; j++) {
+                System.out.printf(" %8.2f%%", simulations.get(i + j).hitRatio() * 100);
+            }
+            System.out.println();
+        }
+
+        System.out.printf("%nPer configuration (L1 %.2f ms, L2 %.2f ms, L3 %.2f ms)%n", l1Millis, l2Millis, l3Millis);
+        System.out.printf("%-10s %8s %8s %9s %9s %9s %10s%n",
+                "policy", "L1", "L2", "L1 hit", "L2 hit", "total", "mean ms");
+        for (Simulation s : simulations) {
+            System.out.printf("%-10s %8d %8d %8.2f%% %8.2f%% %8.2f%% %10.3f%n",
+                    s.policy, s.l1Capacity, s.l2Capacity,
+                    s.l1Hits * 100.0 / Math.max(1, s.requests), s.l2Hits * 100.0 / Math.max(1, s.requests),
+                    s.hitRatio() * 100, s.meanLatencyMillis(l1Millis, l2Millis, l3Millis));
+        }
+    }
+}
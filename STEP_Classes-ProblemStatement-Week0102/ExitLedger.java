@@ -0,0 +1,412 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Append-only binary ledger of completed parking stays.
+ *
+ * Records have a fixed size and go into a direct buffer that is drained to the
+ * FileChannel when it fills, on flush() and on close(), so an exit costs a few
+ * puts into memory instead of a system call. Reopening a ledger keeps its whole
+ * records and cuts off a torn tail left by a crash mid-write.
+ *
+ * File layout: [int MAGIC][int VERSION], then records of
+ * [long plateId][int spot][long entryMillis][long exitMillis][int feeCents]
+ */
+public class ExitLedger implements AutoCloseable {
+
+    public static final int RECORD_BYTES = 32;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAGIC = 0x504B4C47; // "PKLG"
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long records;
+
+    public ExitLedger(Path file) {
+        this(file, 1 << 16);
+    }
+
+    public ExitLedger(Path file, int bufferBytes) {
+        this.file = file;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(RECORD_BYTES, bufferBytes / RECORD_BYTES * RECORD_BYTES));
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+                channel.truncate(0);
+                writeFully(header, 0);
+                size = HEADER_BYTES;
+            } else {
+                checkHeader(channel, file);
+            }
+            this.records = (size - HEADER_BYTES) / RECORD_BYTES;
+            long end = HEADER_BYTES + records * RECORD_BYTES;
+            if (end < size) channel.truncate(end); // torn record from an interrupted write
+            channel.position(end);
+        } catch (IOException e) {
+            closeAfterFailure(e);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            closeAfterFailure(e);
+            throw e;
+        }
+    }
+
+    // A constructor that throws must not leave its channel open
+    private void closeAfterFailure(Exception failure) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static void checkHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read until the header is complete
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IllegalStateException(file + " is not an exit ledger");
+        }
+    }
+
+    /** Stable 64-bit id for a plate: FNV-1a over its characters, then a murmur3 finalizer */
+    public static long plateId(String plate) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < plate.length(); i++) {
+            h ^= plate.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Buffers one record; throws UncheckedIOException, with nothing appended, if a full buffer cannot be drained */
+    public synchronized void append(long plateId, int spot, long entryMillis, long exitMillis, int feeCents) {
+        if (buffer.remaining() < RECORD_BYTES) drain(); // a failed drain can leave less than a record free
+        buffer.putLong(plateId).putInt(spot).putLong(entryMillis).putLong(exitMillis).putInt(feeCents);
+        records++;
+    }
+
+    /** Writes buffered records to the file (not necessarily to the disk, see sync) */
+    public synchronized void flush() {
+        drain();
+    }
+
+    /** Flushes and forces the file's content to the storage device */
+    public synchronized void sync() {
+        drain();
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writes what it can; bytes a failed write left behind stay buffered for the next drain
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) position += channel.write(source, position);
+    }
+
+    public synchronized long records() {
+        return records;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!channel.isOpen()) return;
+        try {
+            drain();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // ------------------------------------------------------
+    // Streaming aggregation: one sequential pass through a
+    // reusable read buffer, O(days + spots) memory however
+    // long the history is
+    // ------------------------------------------------------
+
+    /** Dwell histogram resolution: one bucket per minute up to a day, then one for longer stays */
+    public static final int DWELL_BUCKETS = 24 * 60 + 1;
+
+    // --- Totals for one calendar day, by exit time ---
+    public static final class DayTotals {
+        public final LocalDate date;
+        long exits;
+        long revenueCents;
+        long dwellMillis;
+        final long[] dwellMinutes = new long[DWELL_BUCKETS];
+
+        DayTotals(LocalDate date) {
+            this.date = date;
+        }
+
+        public long exits() {
+            return exits;
+        }
+
+        public long revenueCents() {
+            return revenueCents;
+        }
+
+        public double meanDwellMinutes() {
+            return exits == 0 ? 0 : dwellMillis / 60_000.0 / exits;
+        }
+
+        /** Dwell time in minutes that fraction q of the day's stays are at or under (1440 = a day or more) */
+        public int dwellPercentile(double q) {
+            return percentile(dwellMinutes, exits, q);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s  %6d exits  $%,10.2f  dwell mean %5.0f min, p50 %4d, p90 %4d, p99 %4d",
+                    date, exits, revenueCents / 100.0, meanDwellMinutes(),
+                    dwellPercentile(0.50), dwellPercentile(0.90), dwellPercentile(0.99));
+        }
+    }
+
+    // --- Everything one pass over a ledger produces ---
+    public static final class LedgerReport {
+        public final List<DayTotals> days;
+        public final long records;
+        public final long bytesRead;
+        public final long elapsedNanos;
+        public final long firstEntryMillis;
+        public final long lastExitMillis;
+        private final long[] spotBusyMillis;
+        private final long[] dwellMinutes;
+
+        LedgerReport(List<DayTotals> days, long records, long bytesRead, long elapsedNanos,
+                     long firstEntryMillis, long lastExitMillis, long[] spotBusyMillis, long[] dwellMinutes) {
+            this.days = days;
+            this.records = records;
+            this.bytesRead = bytesRead;
+            this.elapsedNanos = elapsedNanos;
+            this.firstEntryMillis = firstEntryMillis;
+            this.lastExitMillis = lastExitMillis;
+            this.spotBusyMillis = spotBusyMillis;
+            this.dwellMinutes = dwellMinutes;
+        }
+
+        public int spots() {
+            return spotBusyMillis.length;
+        }
+
+        /** Share of the ledger's time span the spot was occupied by stays that have ended */
+        public double utilization(int spot) {
+            long span = lastExitMillis - firstEntryMillis;
+            return span <= 0 || spot >= spotBusyMillis.length ? 0 : spotBusyMillis[spot] / (double) span;
+        }
+
+        public int dwellPercentile(double q) {
+            return percentile(dwellMinutes, records, q);
+        }
+
+        public long revenueCents() {
+            long total = 0;
+            for (DayTotals day : days) total += day.revenueCents;
+            return total;
+        }
+    }
+
+    private static int percentile(long[] histogram, long count, double q) {
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank) return bucket;
+        }
+        return 0;
+    }
+
+    /** Streams the whole ledger once; days are calendar days of the exit time in this zone */
+    public static LedgerReport aggregate(Path file, ZoneId zone) {
+        long start = System.nanoTime();
+        Map<LocalDate, DayTotals> days = new TreeMap<>();
+        long[] dwellMinutes = new long[DWELL_BUCKETS];
+        long[] spotBusyMillis = new long[64];
+        long records = 0;
+        long bytesRead = 0;
+        long firstEntry = Long.MAX_VALUE;
+        long lastExit = Long.MIN_VALUE;
+
+        // Exits arrive nearly in time order, so the day only needs resolving when it changes
+        DayTotals day = null;
+        long dayStart = 0;
+        long dayEnd = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            checkHeader(channel, file);
+            channel.position(HEADER_BYTES);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+            while (true) {
+                int read = channel.read(buffer);
+                if (read > 0) bytesRead += read;
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_BYTES) {
+                    buffer.getLong(); // plateId: not needed for these totals
+                    int spot = buffer.getInt();
+                    long entry = buffer.getLong();
+                    long exit = buffer.getLong();
+                    int feeCents = buffer.getInt();
+
+                    if (day == null || exit < dayStart || exit >= dayEnd) {
+                        LocalDate date = Instant.ofEpochMilli(exit).atZone(zone).toLocalDate();
+                        day = days.computeIfAbsent(date, DayTotals::new);
+                        dayStart = date.atStartOfDay(zone).toInstant().toEpochMilli();
+                        dayEnd = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+                    }
+
+                    long dwell = Math.max(0, exit - entry);
+                    int bucket = (int) Math.min(DWELL_BUCKETS - 1, dwell / 60_000);
+                    day.exits++;
+                    day.revenueCents += feeCents;
+                    day.dwellMillis += dwell;
+                    day.dwellMinutes[bucket]++;
+                    dwellMinutes[bucket]++;
+
+                    if (spot >= spotBusyMillis.length) {
+                        spotBusyMillis = Arrays.copyOf(spotBusyMillis, Math.max(spot + 1, spotBusyMillis.length * 2));
+                    }
+                    spotBusyMillis[spot] += dwell;
+                    if (entry < firstEntry) firstEntry = entry;
+                    if (exit > lastExit) lastExit = exit;
+                    records++;
+                }
+                buffer.compact();
+                if (read < 0) break;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int spots = spotBusyMillis.length;
+        while (spots > 0 && spotBusyMillis[spots - 1] == 0) spots--;
+        return new LedgerReport(new ArrayList<>(days.values()), records, bytesRead, System.nanoTime() - start,
+                records == 0 ? 0 : firstEntry, records == 0 ? 0 : lastExit,
+                Arrays.copyOf(spotBusyMillis, spots), dwellMinutes);
+    }
+
+    // ---------------------------------------------
+    // Demo: half a year of exits from a 3000-spot garage
+    // ---------------------------------------------
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("exit-ledger", ".bin");
+        ZoneId zone = ZoneId.systemDefault();
+        int spots = 3_000;
+        int days = 182;
+        long firstDay = LocalDate.of(2026, 4, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        try {
+            // Stays leave in exit order: each spot turns over independently through the day
+            Random random = new Random(49);
+            long start = System.nanoTime();
+            try (ExitLedger ledger = new ExitLedger(file, 1 << 20)) {
+                long[] freeAt = new long[spots];
+                Arrays.fill(freeAt, firstDay);
+                for (int d = 0; d < days; d++) {
+                    long dayEnd = firstDay + (d + 1) * 86_400_000L;
+                    List<long[]> exits = new ArrayList<>();
+                    for (int spot = 0; spot < spots; spot++) {
+                        long t = Math.max(freeAt[spot], dayEnd - 86_400_000L);
+                        while (true) {
+                            long entry = t + (long) (-45 * 60_000 * Math.log(1 - random.nextDouble()));
+                            long stay = 15 * 60_000 + (long) (-150 * 60_000 * Math.log(1 - random.nextDouble()));
+                            if (entry + stay >= dayEnd) break;
+                            exits.add(new long[] {entry + stay, spot, entry});
+                            t = entry + stay;
+                        }
+                        freeAt[spot] = t;
+                    }
+                    exits.sort((a, b) -> Long.compare(a[0], b[0]));
+                    for (long[] exit : exits) {
+                        long dwell = exit[0] - exit[2];
+                        int feeCents = (int) ParkingLotSystem.feeCents(dwell);
+                        ledger.append(plateId("KA" + random.nextInt(1_000_000)), (int) exit[1], exit[2], exit[0], feeCents);
+                    }
+                }
+                System.out.printf("Wrote %,d exits (%d days, %d spots) in %d ms, %.1f MB%n", ledger.records(), days,
+                        spots, (System.nanoTime() - start) / 1_000_000, Files.size(file) / 1e6);
+            }
+
+            // Reopening after a crash mid-record keeps every whole record
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(new byte[RECORD_BYTES / 2]));
+            }
+            try (ExitLedger reopened = new ExitLedger(file)) {
+                System.out.printf("Reopened with a torn tail: %,d whole records kept%n", reopened.records());
+            }
+
+            aggregate(file, zone); // warm-up pass
+            LedgerReport report = aggregate(file, zone);
+            double seconds = report.elapsedNanos / 1e9;
+            System.out.printf("Aggregated %,d records in %d ms (%.0f MB/s, %.1f M records/s)%n", report.records,
+                    report.elapsedNanos / 1_000_000, report.bytesRead / 1e6 / seconds, report.records / 1e6 / seconds);
+            System.out.println();
+
+            System.out.println("=== Last 7 days ===");
+            for (DayTotals day : report.days.subList(report.days.size() - 7, report.days.size())) {
+                System.out.println(day);
+            }
+            System.out.printf("Total revenue $%,.2f, dwell p50 %d min, p90 %d min, p99 %d min%n",
+                    report.revenueCents() / 100.0, report.dwellPercentile(0.50), report.dwellPercentile(0.90),
+                    report.dwellPercentile(0.99));
+
+            double[] utilization = new double[report.spots()];
+            for (int spot = 0; spot < utilization.length; spot++) utilization[spot] = report.utilization(spot);
+            Arrays.sort(utilization);
+            System.out.printf("Spot utilization: min %.1f%%, median %.1f%%, max %.1f%%%n", utilization[0] * 100,
+                    utilization[utilization.length / 2] * 100, utilization[utilization.length - 1] * 100);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
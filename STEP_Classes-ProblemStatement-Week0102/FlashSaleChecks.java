@@ -0,0 +1,215 @@
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Behaviour checks for the concurrent paths of FlashSaleInventoryManager: the
+ * sequencer ring, its shutdown and failure handling, hold expiry, listener
+ * failures and the waiting-list handover. Each check throws
+ * IllegalStateException on the first violation; a clean run prints one "ok"
+ * line per check.
+ *
+ * Usage: java FlashSaleChecks
+ */
+public class FlashSaleChecks {
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new IllegalStateException(message);
+    }
+
+    // --- Many producers, one shard: every unit sold exactly once ---
+    private static void sequencerSellsEachUnitOnce() throws InterruptedException {
+        FlashSaleInventoryManager manager = new FlashSaleInventoryManager();
+        int stock = 30_000;
+        manager.addProduct("HOT", stock, 0, FlashSaleInventoryManager.Engine.SEQUENCED);
+
+        int threads = 8;
+        int perThread = 5_000;
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger waitlisted = new AtomicInteger();
+        List<Thread> buyers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            buyers.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    String result = manager.purchaseItem("HOT", base + i);
+                    if (result.startsWith("Success")) sold.incrementAndGet();
+                    else if (result.startsWith("Added to waiting list")) waitlisted.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread buyer : buyers) buyer.join();
+        manager.shutdown();
+
+        int buyersTotal = threads * perThread;
+        check(sold.get() == Math.min(stock, buyersTotal), "sold " + sold + " of " + stock);
+        check(waitlisted.get() == buyersTotal - sold.get(), "waitlisted " + waitlisted);
+        check(manager.getStock("HOT") == stock - sold.get(), "stock left " + manager.getStock("HOT"));
+    }
+
+    // --- A purchase that throws fails its own future; the shard keeps serving ---
+    private static void sequencerSurvivesFailingPurchase() throws ReflectiveOperationException {
+        FlashSaleInventoryManager manager = new FlashSaleInventoryManager();
+        manager.addProduct("BROKEN", 10, 0, FlashSaleInventoryManager.Engine.SEQUENCED);
+        manager.addProduct("FINE", 10, 0, FlashSaleInventoryManager.Engine.SEQUENCED);
+        limitTable(manager).put("BROKEN", new FlashSaleInventoryManager.UserPurchaseIndex() {
+            public boolean tryAcquire(int userId, int units) {
+                throw new IllegalArgumentException("limit store down");
+            }
+
+            public void release(int userId, int units) {
+            }
+        });
+
+        try {
+            manager.purchaseItem("BROKEN", 1);
+            check(false, "failing purchase returned normally");
+        } catch (CompletionException e) {
+            check(e.getCause() instanceof IllegalArgumentException, "unexpected cause " + e.getCause());
+        }
+        // Both products may share the shard; it must still be applying purchases
+        check(manager.purchaseItem("FINE", 2).startsWith("Success"), "shard stopped after a failure");
+        manager.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, FlashSaleInventoryManager.UserPurchaseIndex> limitTable(
+            FlashSaleInventoryManager manager) throws ReflectiveOperationException {
+        Field field = FlashSaleInventoryManager.class.getDeclaredField("limitTable");
+        field.setAccessible(true);
+        return (Map<String, FlashSaleInventoryManager.UserPurchaseIndex>) field.get(manager);
+    }
+
+    // --- Shutdown completes everything in the ring and rejects later purchases ---
+    private static void sequencerShutdownNeverHangs() throws InterruptedException {
+        FlashSaleInventoryManager manager = new FlashSaleInventoryManager();
+        manager.addProduct("TICKET", 1_000_000, 0, FlashSaleInventoryManager.Engine.SEQUENCED);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) futures.add(manager.purchaseItemAsync("TICKET", i));
+        manager.shutdown();
+
+        int applied = 0;
+        for (CompletableFuture<String> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                applied++;
+            } catch (ExecutionException e) {
+                check(e.getCause() instanceof IllegalStateException, "unexpected cause " + e.getCause());
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("future still pending after shutdown");
+            }
+        }
+        check(manager.getStock("TICKET") == 1_000_000 - applied, "stock disagrees with completed purchases");
+
+        try {
+            manager.purchaseItemAsync("TICKET", -1).get(10, TimeUnit.SECONDS);
+            check(false, "purchase accepted after shutdown");
+        } catch (ExecutionException e) {
+            check(e.getCause() instanceof IllegalStateException, "unexpected cause " + e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("purchase after shutdown hangs");
+        }
+    }
+
+    // --- A throwing HoldListener does not stop later holds from expiring ---
+    private static void expirySurvivesThrowingListener() throws InterruptedException {
+        FlashSaleInventoryManager manager = new FlashSaleInventoryManager();
+        manager.addProduct("PS5", 2);
+        manager.setHoldListener((holdId, productId, userId) -> {
+            throw new IllegalStateException("listener bug");
+        });
+        manager.hold("PS5", 1, 50);
+        manager.hold("PS5", 2, 50);
+        manager.hold("PS5", 3, 50); // waitlisted, promoted when hold 1 expires
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (manager.getStock("PS5") < 2 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        manager.shutdown();
+        check(manager.getStock("PS5") == 2, "holds stopped expiring, stock " + manager.getStock("PS5"));
+        check(manager.getListenerFailures() >= 1, "listener failure not counted");
+    }
+
+    // --- A throwing HoldListener does not fail the release that handed the unit on ---
+    private static void releaseSurvivesThrowingListener() {
+        FlashSaleInventoryManager manager = new FlashSaleInventoryManager();
+        manager.addProduct("PS5", 1);
+        AtomicLong granted = new AtomicLong();
+        manager.setHoldListener((holdId, productId, userId) -> {
+            granted.set(holdId);
+            throw new IllegalStateException("listener bug");
+        });
+        long holdId = manager.hold("PS5", 1, 60_000);
+        manager.hold("PS5", 2, 60_000); // waitlisted, promoted by the release
+
+        String released;
+        try {
+            released = manager.release(holdId);
+        } catch (RuntimeException e) {
+            released = "threw " + e;
+        }
+        String confirmed = manager.confirm(granted.get());
+        manager.shutdown();
+        check(released.startsWith("Released"), "release: " + released);
+        check(confirmed.startsWith("Confirmed"), "granted hold unusable: " + confirmed);
+        check(manager.getListenerFailures() == 1, "listener failures " + manager.getListenerFailures());
+    }
+
+    // --- A unit returned while a buyer is being waitlisted reaches that buyer ---
+    private static void returnedUnitReachesWaitingBuyer() throws InterruptedException {
+        for (int round = 0; round < 2_000; round++) {
+            FlashSaleInventoryManager manager = new FlashSaleInventoryManager();
+            manager.addProduct("GPU", 1);
+            long holdId = manager.hold("GPU", 1, 60_000);
+
+            CountDownLatch start = new CountDownLatch(1);
+            Thread returner = Thread.ofPlatform().start(() -> {
+                awaitQuietly(start);
+                manager.release(holdId);
+            });
+            Thread buyer = Thread.ofPlatform().start(() -> {
+                awaitQuietly(start);
+                manager.hold("GPU", 2, 60_000);
+            });
+            start.countDown();
+            returner.join();
+            buyer.join();
+
+            boolean stranded = manager.getStock("GPU") > 0 && manager.getNextInWaitingList("GPU") != null;
+            manager.shutdown();
+            check(!stranded, "buyer left waiting with stock available, round " + round);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        sequencerSellsEachUnitOnce();
+        System.out.println("ok  sequencer sells each unit once");
+        sequencerSurvivesFailingPurchase();
+        System.out.println("ok  sequencer survives a failing purchase");
+        sequencerShutdownNeverHangs();
+        System.out.println("ok  sequencer shutdown completes or fails every purchase");
+        expirySurvivesThrowingListener();
+        System.out.println("ok  hold expiry survives a throwing listener");
+        releaseSurvivesThrowingListener();
+        System.out.println("ok  release survives a throwing listener");
+        returnedUnitReachesWaitingBuyer();
+        System.out.println("ok  returned unit reaches a buyer waitlisted at the same time");
+    }
+}
@@ -1,6 +1,20 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 public class FlashSaleInventoryManager {
 
@@ -10,34 +24,553 @@ public class FlashSaleInventoryManager {
     // productId -> waiting list of users (FIFO)
     private final ConcurrentHashMap<String, LinkedBlockingQueue<Integer>> waitingListTable = new ConcurrentHashMap<>();
 
+    // productId -> per-user purchase counter (only for products with a limit)
+    private final ConcurrentHashMap<String, UserPurchaseIndex> limitTable = new ConcurrentHashMap<>();
+
+    // productId -> state of products handled by the single-writer sequencer
+    private final ConcurrentHashMap<String, SequencedProduct> sequencedTable = new ConcurrentHashMap<>();
+    private SequencerShard[] sequencerShards; // started on first sequenced product
+
+    // holdId -> active cart hold (removed once confirmed, released or expired)
+    private final ConcurrentHashMap<Long, Hold> holdTable = new ConcurrentHashMap<>();
+    private final AtomicLong holdIdGenerator = new AtomicLong();
+
+    // Single ticker thread that expires holds, shared by every product
+    private final TimingWheel expiryWheel = new TimingWheel(TICK_MS, WHEEL_SIZE);
+
+    // Optional callback fired when a returned unit is handed to a waiting user
+    private volatile HoldListener holdListener;
+    private final AtomicLong listenerFailures = new AtomicLong();
+
+    // Return codes of hold() that are not hold ids
+    public static final long PRODUCT_NOT_FOUND = -1;
+    public static final long WAITLISTED = 0;
+    public static final long LIMIT_REACHED = -2;
+
+    // TTL of the hold given to a waiting user when units come back without a hold TTL
+    // of their own: a cart rollback, or stock found while a purchase was being waitlisted
+    private static final long PROMOTION_HOLD_TTL_MS = 10 * 60 * 1000;
+
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 512;
+
+    // Hold lifecycle, moved forward by CAS so confirm/release/expiry never double count
+    private static final int HELD = 0, CONFIRMED = 1, RELEASED = 2, EXPIRED = 3;
+
+    // --- How purchases of a product are applied ---
+    public enum Engine {
+        CAS,        // callers decrement the shared counter themselves
+        SEQUENCED   // callers publish to a ring buffer, one shard thread applies in order
+    }
+
+    // --- Callback for users promoted off the waiting list ---
+    public interface HoldListener {
+        void onHoldGranted(long holdId, String productId, int userId);
+    }
+
+    // --- One unit reserved for one user until deadline ---
+    static class Hold {
+        final long holdId;
+        final String productId;
+        final int userId;
+        final long ttlMillis;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(HELD);
+        long remainingRounds; // owned by the wheel thread
+
+        Hold(long holdId, String productId, int userId, long ttlMillis) {
+            this.holdId = holdId;
+            this.productId = productId;
+            this.userId = userId;
+            this.ttlMillis = ttlMillis;
+            this.deadline = System.currentTimeMillis() + ttlMillis;
+        }
+    }
+
+    // --- Units bought per user for one product, keyed by primitive int userId ---
+    interface UserPurchaseIndex {
+        boolean tryAcquire(int userId, int units);
+        void release(int userId, int units);
+    }
+
+    // --- "One per customer": one bit per userId, pages allocated on first use ---
+    static class UserBitmap implements UserPurchaseIndex {
+        private static final int PAGE_SHIFT = 20;                    // 1M users (128 KB) per page
+        private static final int WORDS_PER_PAGE = (1 << PAGE_SHIFT) >>> 6;
+
+        private final AtomicReferenceArray<AtomicLongArray> pages =
+                new AtomicReferenceArray<>(1 << (32 - PAGE_SHIFT));
+
+        public boolean tryAcquire(int userId, int units) {
+            if (units != 1) return false;
+
+            AtomicLongArray page = page(userId);
+            int word = (userId >>> 6) & (WORDS_PER_PAGE - 1);
+            long bit = 1L << userId;
+
+            while (true) {
+                long current = page.get(word);
+                if ((current & bit) != 0) return false;
+                if (page.compareAndSet(word, current, current | bit)) return true;
+            }
+        }
+
+        public void release(int userId, int units) {
+            AtomicLongArray page = pages.get(userId >>> PAGE_SHIFT);
+            if (page == null) return; // no user on this page ever bought
+            int word = (userId >>> 6) & (WORDS_PER_PAGE - 1);
+            long bit = 1L << userId;
+
+            while (true) {
+                long current = page.get(word);
+                if (page.compareAndSet(word, current, current & ~bit)) return;
+            }
+        }
+
+        private AtomicLongArray page(int userId) {
+            int index = userId >>> PAGE_SHIFT;
+            AtomicLongArray page = pages.get(index);
+            if (page == null) {
+                pages.compareAndSet(index, null, new AtomicLongArray(WORDS_PER_PAGE));
+                page = pages.get(index);
+            }
+            return page;
+        }
+    }
+
+    // --- "N per customer": striped open-addressing int -> int table, no boxing ---
+    static class UserCountTable implements UserPurchaseIndex {
+        private static final int STRIPES = 64;
+        private static final int FREE = Integer.MIN_VALUE; // userId that can never be stored
+
+        private final int limit;
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        UserCountTable(int limit) {
+            this.limit = limit;
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        private static int mix(int userId) {
+            int h = userId * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        public boolean tryAcquire(int userId, int units) {
+            if (userId == FREE) return false;
+
+            int h = mix(userId);
+            Stripe stripe = stripes[h & (STRIPES - 1)];
+            synchronized (stripe) {
+                int slot = stripe.findOrInsert(userId, h >>> 6);
+                if (stripe.counts[slot] + units > limit) return false;
+                stripe.counts[slot] += units;
+                return true;
+            }
+        }
+
+        public void release(int userId, int units) {
+            if (userId == FREE) return;
+
+            int h = mix(userId);
+            Stripe stripe = stripes[h & (STRIPES - 1)];
+            synchronized (stripe) {
+                int slot = stripe.find(userId, h >>> 6);
+                if (slot < 0) return; // never counted
+                stripe.counts[slot] = Math.max(0, stripe.counts[slot] - units);
+            }
+        }
+
+        static class Stripe {
+            int[] keys = newKeys(64);
+            int[] counts = new int[64];
+            int size = 0;
+
+            private static int[] newKeys(int capacity) {
+                int[] keys = new int[capacity];
+                Arrays.fill(keys, FREE);
+                return keys;
+            }
+
+            // Slot of userId, or -1; never inserts
+            int find(int userId, int hash) {
+                int mask = keys.length - 1;
+                int slot = hash & mask;
+                while (keys[slot] != FREE) {
+                    if (keys[slot] == userId) return slot;
+                    slot = (slot + 1) & mask;
+                }
+                return -1;
+            }
+
+            // Linear probing; entries are never removed, zero counts are reused by the same user
+            int findOrInsert(int userId, int hash) {
+                if (size * 2 >= keys.length) resize();
+
+                int mask = keys.length - 1;
+                int slot = hash & mask;
+                while (keys[slot] != FREE) {
+                    if (keys[slot] == userId) return slot;
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = userId;
+                size++;
+                return slot;
+            }
+
+            private void resize() {
+                int[] oldKeys = keys;
+                int[] oldCounts = counts;
+                keys = newKeys(oldKeys.length * 2);
+                counts = new int[oldKeys.length * 2];
+
+                int mask = keys.length - 1;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] == FREE) continue;
+                    int slot = (mix(oldKeys[i]) >>> 6) & mask;
+                    while (keys[slot] != FREE) slot = (slot + 1) & mask;
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+
+    // --- Product owned by one sequencer shard; only that thread writes stock ---
+    static class SequencedProduct {
+        final String productId;
+        final SequencerShard shard;
+        volatile int stock;
+
+        SequencedProduct(String productId, int stock, SequencerShard shard) {
+            this.productId = productId;
+            this.stock = stock;
+            this.shard = shard;
+        }
+    }
+
+    // --- Pre-allocated ring buffer slot; 'published' is the sequence it currently holds ---
+    static class Slot {
+        volatile long published = -1;
+        SequencedProduct product;
+        int userId;
+        CompletableFuture<String> result;
+    }
+
+    // ------------------------------------------------------
+    // One consumer thread applying purchases for its products
+    // in arrival order. Shutdown sets the CLOSED bit of the
+    // claim counter, so no sequence is handed out after it;
+    // the consumer then fails every sequence claimed before it
+    // ------------------------------------------------------
+    class SequencerShard {
+        private static final int RING_SIZE = 1 << 14;
+        private static final int MAX_BATCH = 256;
+        private static final long CLOSED = Long.MIN_VALUE;
+
+        private final Slot[] ring = new Slot[RING_SIZE];
+        private final AtomicLong claimed = new AtomicLong();       // next sequence producers get, | CLOSED
+        private volatile long consumed = 0;                       // everything below is completed
+        private final Thread consumer;
+
+        // Consumer-local batch, completed after the slots are handed back
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final CompletableFuture<String>[] batchFutures = new CompletableFuture[MAX_BATCH];
+        private final String[] batchResults = new String[MAX_BATCH];
+        private final RuntimeException[] batchErrors = new RuntimeException[MAX_BATCH];
+
+        SequencerShard(int index) {
+            for (int i = 0; i < RING_SIZE; i++) {
+                ring[i] = new Slot();
+            }
+            consumer = new Thread(this::consume, "flash-sale-sequencer-" + index);
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+
+        /** Future of the purchase; fails with IllegalStateException once the shard is shut down */
+        CompletableFuture<String> publish(SequencedProduct product, int userId) {
+            long sequence;
+            do {
+                sequence = claimed.get();
+                if (sequence < 0) return CompletableFuture.failedFuture(new IllegalStateException("sequencer shut down"));
+            } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+            while (sequence - consumed >= RING_SIZE) {
+                Thread.yield(); // ring full, let the consumer (or another caller) run
+            }
+
+            Slot slot = ring[(int) (sequence & (RING_SIZE - 1))];
+            CompletableFuture<String> result = new CompletableFuture<>();
+            slot.product = product;
+            slot.userId = userId;
+            slot.result = result;
+            slot.published = sequence; // volatile write makes the fields above visible
+            return result;
+        }
+
+        private void consume() {
+            int idleSpins = 0;
+            while (claimed.get() >= 0) {
+                long next = consumed;
+                int batch = 0;
+
+                while (batch < MAX_BATCH) {
+                    Slot slot = ring[(int) ((next + batch) & (RING_SIZE - 1))];
+                    if (slot.published != next + batch) break;
+
+                    batchFutures[batch] = slot.result;
+                    try {
+                        batchResults[batch] = apply(slot.product, slot.userId);
+                    } catch (RuntimeException e) {
+                        batchErrors[batch] = e; // fails this caller only, the shard keeps going
+                    }
+                    slot.product = null;
+                    slot.result = null;
+                    batch++;
+                }
+
+                if (batch == 0) {
+                    if (++idleSpins < 1000) Thread.onSpinWait();
+                    else LockSupport.parkNanos(50_000);
+                    continue;
+                }
+                idleSpins = 0;
+
+                consumed = next + batch; // release the slots before waking callers
+                for (int i = 0; i < batch; i++) {
+                    if (batchErrors[i] != null) batchFutures[i].completeExceptionally(batchErrors[i]);
+                    else batchFutures[i].complete(batchResults[i]);
+                    batchFutures[i] = null;
+                    batchResults[i] = null;
+                    batchErrors[i] = null;
+                }
+            }
+            failPending();
+        }
+
+        // Every sequence claimed before the shutdown; a caller between claim and publish is waited for
+        private void failPending() {
+            long end = claimed.get() & ~CLOSED;
+            IllegalStateException closed = new IllegalStateException("sequencer shut down");
+            for (long sequence = consumed; sequence < end; sequence++) {
+                Slot slot = ring[(int) (sequence & (RING_SIZE - 1))];
+                while (slot.published != sequence) Thread.onSpinWait();
+                CompletableFuture<String> result = slot.result;
+                slot.product = null;
+                slot.result = null;
+                consumed = sequence + 1;
+                result.completeExceptionally(closed);
+            }
+        }
+
+        // Same rules as purchaseItem, but with a single writer there is nothing to retry
+        private String apply(SequencedProduct product, int userId) {
+            if (!acquireLimit(product.productId, userId, 1)) {
+                return "Purchase limit reached";
+            }
+
+            int currentStock = product.stock;
+            if (currentStock <= 0) {
+                releaseLimit(product.productId, userId, 1);
+                int position = addToWaitingList(product.productId, userId);
+                return "Added to waiting list, position #" + position;
+            }
+
+            product.stock = currentStock - 1;
+            return "Success, " + (currentStock - 1) + " units remaining";
+        }
+
+        void shutdown() {
+            claimed.getAndUpdate(sequence -> sequence | CLOSED);
+        }
+    }
+
+    // --- Hashed timing wheel: O(1) schedule, each tick only visits one bucket ---
+    class TimingWheel {
+        private final long tickMillis;
+        private final List<Hold>[] buckets;
+        private final ConcurrentLinkedQueue<Hold> pending = new ConcurrentLinkedQueue<>();
+        private final ScheduledExecutorService ticker;
+        private final long startTime = System.currentTimeMillis();
+        private long tick = 0; // owned by the wheel thread
+        private final AtomicLong failures = new AtomicLong();
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        TimingWheel(long tickMillis, int size) {
+            this.tickMillis = tickMillis;
+            this.buckets = new List[size];
+            for (int i = 0; i < size; i++) {
+                buckets[i] = new ArrayList<>();
+            }
+            this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "flash-sale-hold-wheel");
+                t.setDaemon(true);
+                return t;
+            });
+            ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+
+        // Callers only enqueue; the wheel thread places holds into buckets
+        void schedule(Hold hold) {
+            pending.add(hold);
+        }
+
+        // A throw out of here would cancel the scheduled task and no hold would expire again
+        private void advance() {
+            long now = System.currentTimeMillis();
+            long targetTick = (now - startTime) / tickMillis;
+
+            while (tick <= targetTick) {
+                try {
+                    transferPending();
+                    expireBucket(buckets[(int) (tick % buckets.length)]);
+                } catch (RuntimeException e) {
+                    failed("tick " + tick, e);
+                }
+                tick++;
+            }
+        }
+
+        private void failed(String what, RuntimeException e) {
+            failures.incrementAndGet();
+            System.err.println("flash-sale-hold-wheel: " + what + " failed: " + e);
+        }
+
+        long failures() {
+            return failures.get();
+        }
+
+        private void transferPending() {
+            Hold hold;
+            while ((hold = pending.poll()) != null) {
+                if (hold.state.get() != HELD) continue; // confirmed/released before placement
+
+                long deadlineTick = Math.max(tick, (hold.deadline - startTime + tickMillis - 1) / tickMillis);
+                hold.remainingRounds = (deadlineTick - tick) / buckets.length;
+                buckets[(int) (deadlineTick % buckets.length)].add(hold);
+            }
+        }
+
+        private void expireBucket(List<Hold> bucket) {
+            int kept = 0;
+            for (int i = 0; i < bucket.size(); i++) {
+                Hold hold = bucket.get(i);
+                if (hold.state.get() != HELD) continue; // lazily dropped, no removal on confirm
+
+                if (hold.remainingRounds > 0) {
+                    hold.remainingRounds--;
+                    bucket.set(kept++, hold);
+                } else if (hold.state.compareAndSet(HELD, EXPIRED)) {
+                    try {
+                        holdTable.remove(hold.holdId);
+                        releaseLimit(hold.productId, hold.userId, 1);
+                        returnUnit(hold.productId, hold.ttlMillis);
+                    } catch (RuntimeException e) {
+                        failed("expiry of hold #" + hold.holdId, e);
+                    }
+                }
+            }
+            bucket.subList(kept, bucket.size()).clear();
+        }
+
+        void shutdown() {
+            ticker.shutdownNow();
+        }
+    }
+
     // --- Add product with initial stock ---
     public void addProduct(String productId, int stock) {
         stockTable.put(productId, new AtomicInteger(stock));
         waitingListTable.put(productId, new LinkedBlockingQueue<>());
     }
 
+    // --- Add product where each user may buy at most perUserLimit units (<= 0 means unlimited) ---
+    public void addProduct(String productId, int stock, int perUserLimit) {
+        addProduct(productId, stock);
+        if (perUserLimit <= 0) return;
+        limitTable.put(productId, perUserLimit == 1 ? new UserBitmap() : new UserCountTable(perUserLimit));
+    }
+
+    // --- Add product and pick its purchase engine; SEQUENCED products do not support holds or carts ---
+    public void addProduct(String productId, int stock, int perUserLimit, Engine engine) {
+        if (engine == Engine.CAS) {
+            addProduct(productId, stock, perUserLimit);
+            return;
+        }
+
+        waitingListTable.put(productId, new LinkedBlockingQueue<>());
+        if (perUserLimit > 0) {
+            limitTable.put(productId, perUserLimit == 1 ? new UserBitmap() : new UserCountTable(perUserLimit));
+        }
+        sequencedTable.put(productId, new SequencedProduct(productId, stock, shardFor(productId)));
+    }
+
+    private synchronized SequencerShard shardFor(String productId) {
+        if (sequencerShards == null) {
+            int shards = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            sequencerShards = new SequencerShard[shards];
+            for (int i = 0; i < shards; i++) {
+                sequencerShards[i] = new SequencerShard(i);
+            }
+        }
+        return sequencerShards[Math.floorMod(productId.hashCode(), sequencerShards.length)];
+    }
+
     // --- Check stock in O(1) ---
     public String checkStock(String productId) {
+        int stock = getStock(productId);
+        if (stock < 0) return "Product not found";
+
+        return stock + " units available";
+    }
+
+    // --- Raw stock count, -1 if the product does not exist ---
+    public int getStock(String productId) {
+        SequencedProduct sequenced = sequencedTable.get(productId);
+        if (sequenced != null) return sequenced.stock;
+
         AtomicInteger stock = stockTable.get(productId);
-        if (stock == null) return "Product not found";
+        return stock == null ? -1 : stock.get();
+    }
 
-        return stock.get() + " units available";
+    // --- Purchase without blocking; sequenced products complete when their shard applies the batch ---
+    public CompletableFuture<String> purchaseItemAsync(String productId, int userId) {
+        SequencedProduct sequenced = sequencedTable.get(productId);
+        if (sequenced != null) {
+            return sequenced.shard.publish(sequenced, userId);
+        }
+        return CompletableFuture.completedFuture(purchaseItem(productId, userId));
     }
 
-    // --- Purchase operation with atomic decrement ---
+    // --- Purchase operation with atomic decrement; a sequenced purchase after shutdown throws ---
     public String purchaseItem(String productId, int userId) {
+        SequencedProduct sequenced = sequencedTable.get(productId);
+        if (sequenced != null) {
+            return sequenced.shard.publish(sequenced, userId).join();
+        }
+
         AtomicInteger stock = stockTable.get(productId);
 
         if (stock == null) {
             return "Product does not exist";
         }
 
+        // Claim the user's quota first; it is handed back if no unit can be taken
+        if (!acquireLimit(productId, userId, 1)) {
+            return "Purchase limit reached";
+        }
+
         while (true) {
             int currentStock = stock.get();
 
             // If out of stock → add user to waiting list
             if (currentStock <= 0) {
+                releaseLimit(productId, userId, 1);
                 int position = addToWaitingList(productId, userId);
+                drainWaitingList(productId, PROMOTION_HOLD_TTL_MS);
                 return "Added to waiting list, position #" + position;
             }
 
@@ -50,6 +583,203 @@ public class FlashSaleInventoryManager {
         }
     }
 
+    // --- Reserve one unit for ttlMillis; returns hold id, WAITLISTED or PRODUCT_NOT_FOUND (also for SEQUENCED) ---
+    public long hold(String productId, int userId, long ttlMillis) {
+        AtomicInteger stock = stockTable.get(productId);
+
+        if (stock == null) {
+            return PRODUCT_NOT_FOUND;
+        }
+
+        if (!acquireLimit(productId, userId, 1)) {
+            return LIMIT_REACHED;
+        }
+
+        while (true) {
+            int currentStock = stock.get();
+
+            if (currentStock <= 0) {
+                releaseLimit(productId, userId, 1);
+                addToWaitingList(productId, userId);
+                drainWaitingList(productId, ttlMillis);
+                return WAITLISTED;
+            }
+
+            if (stock.compareAndSet(currentStock, currentStock - 1)) {
+                return createHold(productId, userId, ttlMillis).holdId;
+            }
+        }
+    }
+
+    // --- Buy every line of a cart or none; lines are claimed in productId order ---
+    public String checkout(Map<String, Integer> cart, int userId) {
+        TreeMap<String, Integer> lines = new TreeMap<>(cart);
+
+        for (Map.Entry<String, Integer> line : lines.entrySet()) {
+            if (sequencedTable.containsKey(line.getKey())) return "Sequenced product not allowed in carts: " + line.getKey();
+            if (!stockTable.containsKey(line.getKey())) return "Product does not exist: " + line.getKey();
+            if (line.getValue() <= 0) return "Invalid quantity for " + line.getKey();
+        }
+
+        List<Map.Entry<String, Integer>> taken = new ArrayList<>();
+        for (Map.Entry<String, Integer> line : lines.entrySet()) {
+            String productId = line.getKey();
+            int units = line.getValue();
+
+            if (!acquireLimit(productId, userId, units)) {
+                rollback(taken, userId);
+                return "Purchase limit reached for " + productId;
+            }
+            if (!tryTake(stockTable.get(productId), units)) {
+                releaseLimit(productId, userId, units);
+                rollback(taken, userId);
+                return "Insufficient stock for " + productId;
+            }
+            taken.add(line);
+        }
+
+        return "Success, " + taken.size() + " lines purchased";
+    }
+
+    // --- Per-product CAS, no lock shared between products ---
+    private boolean tryTake(AtomicInteger stock, int units) {
+        while (true) {
+            int currentStock = stock.get();
+            if (currentStock < units) return false;
+            if (stock.compareAndSet(currentStock, currentStock - units)) return true;
+        }
+    }
+
+    // --- Undo claimed lines; units go through the normal return path so waiters are served ---
+    private void rollback(List<Map.Entry<String, Integer>> taken, int userId) {
+        for (Map.Entry<String, Integer> line : taken) {
+            releaseLimit(line.getKey(), userId, line.getValue());
+            for (int i = 0; i < line.getValue(); i++) {
+                returnUnit(line.getKey(), PROMOTION_HOLD_TTL_MS);
+            }
+        }
+    }
+
+    // --- Turn a hold into a permanent sale ---
+    public String confirm(long holdId) {
+        Hold hold = holdTable.get(holdId);
+        if (hold == null || !hold.state.compareAndSet(HELD, CONFIRMED)) {
+            return "Hold not found or expired";
+        }
+
+        holdTable.remove(holdId);
+        return "Confirmed, hold #" + holdId + " for " + hold.productId;
+    }
+
+    // --- Give a held unit back before its deadline ---
+    public String release(long holdId) {
+        Hold hold = holdTable.get(holdId);
+        if (hold == null || !hold.state.compareAndSet(HELD, RELEASED)) {
+            return "Hold not found or expired";
+        }
+
+        holdTable.remove(holdId);
+        releaseLimit(hold.productId, hold.userId, 1);
+        returnUnit(hold.productId, hold.ttlMillis);
+        return "Released, hold #" + holdId;
+    }
+
+    public void setHoldListener(HoldListener listener) {
+        this.holdListener = listener;
+    }
+
+    // --- Hold expiries that threw; the wheel keeps running ---
+    public long getExpiryFailures() {
+        return expiryWheel.failures();
+    }
+
+    // --- HoldListener calls that threw; the hold was granted all the same ---
+    public long getListenerFailures() {
+        return listenerFailures.get();
+    }
+
+    // --- Stops the expiry wheel and sequencer threads ---
+    public synchronized void shutdown() {
+        expiryWheel.shutdown();
+        if (sequencerShards != null) {
+            for (SequencerShard shard : sequencerShards) shard.shutdown();
+        }
+    }
+
+    private Hold createHold(String productId, int userId, long ttlMillis) {
+        Hold hold = new Hold(holdIdGenerator.incrementAndGet(), productId, userId, ttlMillis);
+        holdTable.put(hold.holdId, hold);
+        expiryWheel.schedule(hold);
+        return hold;
+    }
+
+    // --- Returned unit goes to the next waiting user as a fresh hold, else back to stock ---
+    private void returnUnit(String productId, long ttlMillis) {
+        if (grantToNextWaiting(productId, ttlMillis)) return;
+
+        stockTable.get(productId).incrementAndGet();
+        // A buyer may have seen stock 0 and queued after the poll above
+        drainWaitingList(productId, ttlMillis);
+    }
+
+    // ------------------------------------------------------
+    // Stock and waiting list change without a shared lock, so
+    // each side publishes its change first and then checks the
+    // other: a buyer queues then looks at stock, a returner
+    // restores stock then looks at the queue. Whichever moves
+    // second sees both and hands the unit over here
+    // ------------------------------------------------------
+    private void drainWaitingList(String productId, long ttlMillis) {
+        AtomicInteger stock = stockTable.get(productId);
+        LinkedBlockingQueue<Integer> queue = waitingListTable.get(productId);
+        while (!queue.isEmpty() && tryTake(stock, 1)) {
+            if (!grantToNextWaiting(productId, ttlMillis)) {
+                stock.incrementAndGet(); // queue emptied meanwhile; the loop re-checks it
+            }
+        }
+    }
+
+    // --- Polls the waiting list for a user still under their limit and gives them a hold ---
+    private boolean grantToNextWaiting(String productId, long ttlMillis) {
+        Integer nextUser;
+        do {
+            nextUser = getNextInWaitingList(productId);
+        } while (nextUser != null && !acquireLimit(productId, nextUser, 1)); // skip users who bought meanwhile
+
+        if (nextUser == null) return false;
+
+        Hold hold = createHold(productId, nextUser, ttlMillis);
+        notifyHoldGranted(hold);
+        return true;
+    }
+
+    // ------------------------------------------------------
+    // The listener runs on whichever thread returned the unit:
+    // a release, a purchase, a cart rollback or the wheel. By
+    // then the hold exists, so a throwing listener is counted
+    // and logged here instead of failing that caller
+    // ------------------------------------------------------
+    private void notifyHoldGranted(Hold hold) {
+        HoldListener listener = holdListener;
+        if (listener == null) return;
+        try {
+            listener.onHoldGranted(hold.holdId, hold.productId, hold.userId);
+        } catch (RuntimeException e) {
+            listenerFailures.incrementAndGet();
+            System.err.println("flash-sale-hold-listener: grant of hold #" + hold.holdId + " failed: " + e);
+        }
+    }
+
+    private boolean acquireLimit(String productId, int userId, int units) {
+        UserPurchaseIndex index = limitTable.get(productId);
+        return index == null || index.tryAcquire(userId, units);
+    }
+
+    private void releaseLimit(String productId, int userId, int units) {
+        UserPurchaseIndex index = limitTable.get(productId);
+        if (index != null) index.release(userId, units);
+    }
+
     // --- Add user to waiting list ---
     private int addToWaitingList(String productId, int userId) {
         LinkedBlockingQueue<Integer> queue = waitingListTable.get(productId);
@@ -64,7 +794,7 @@ public class FlashSaleInventoryManager {
     }
 
     // --- Demo / main ---
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
         FlashSaleInventoryManager manager = new FlashSaleInventoryManager();
 
         manager.addProduct("IPHONE15_256GB", 100);
@@ -80,5 +810,42 @@ public class FlashSaleInventoryManager {
 
         // Now out of stock
         System.out.println(manager.purchaseItem("IPHONE15_256GB", 99999)); // waiting list
+
+        // Cart holds: abandoned payments come back to the waiting list
+        manager.addProduct("PS5_DIGITAL", 2);
+        manager.setHoldListener((holdId, productId, userId) -> {
+            System.out.println("User " + userId + " promoted from waiting list, hold #" + holdId);
+            System.out.println(manager.confirm(holdId));
+        });
+
+        long paying = manager.hold("PS5_DIGITAL", 1, 5_000);
+        long abandoning = manager.hold("PS5_DIGITAL", 2, 100);
+        System.out.println("Hold for user 3: " + manager.hold("PS5_DIGITAL", 3, 100)); // 0 → waitlisted
+
+        System.out.println(manager.confirm(paying));
+        Thread.sleep(300); // user 2 never pays, hold expires and user 3 gets the unit
+        System.out.println(manager.confirm(abandoning));
+        System.out.println(manager.checkStock("PS5_DIGITAL"));
+
+        // One per customer: the second attempt is rejected without touching stock
+        manager.addProduct("SNEAKER_DROP", 10, 1);
+        System.out.println(manager.purchaseItem("SNEAKER_DROP", 42));
+        System.out.println(manager.purchaseItem("SNEAKER_DROP", 42));
+        System.out.println(manager.checkStock("SNEAKER_DROP"));
+
+        // Bundle checkout: the console line succeeds, the second cart fails as a whole
+        manager.addProduct("XBOX_SERIES_X", 1);
+        manager.addProduct("XBOX_CONTROLLER", 5);
+        System.out.println(manager.checkout(Map.of("XBOX_SERIES_X", 1, "XBOX_CONTROLLER", 2), 7));
+        System.out.println(manager.checkout(Map.of("XBOX_SERIES_X", 1, "XBOX_CONTROLLER", 2), 8));
+        System.out.println(manager.checkStock("XBOX_CONTROLLER")); // still 3, nothing leaked
+
+        // Hot SKU on the sequencer: same purchaseItem API, applied by one shard thread
+        manager.addProduct("CONCERT_TICKET", 3, 0, Engine.SEQUENCED);
+        for (int userId = 500; userId < 505; userId++) {
+            System.out.println(manager.purchaseItem("CONCERT_TICKET", userId));
+        }
+
+        manager.shutdown();
     }
-}
\ No newline at end of file
+}
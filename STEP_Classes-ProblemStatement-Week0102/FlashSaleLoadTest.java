@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stampede test for FlashSaleInventoryManager: one virtual thread per buyer,
+ * all released at once against a configurable SKU/stock mix.
+ *
+ * Usage: java FlashSaleLoadTest [buyers=200000] [skus=10] [stock=1000] [hot=0.5]
+ *   hot = fraction of buyers that all go for SKU_0
+ */
+public class FlashSaleLoadTest {
+
+    enum Outcome { SOLD, WAITLISTED, REJECTED }
+
+    // --- A way of buying one unit through the manager ---
+    interface Strategy {
+        String name();
+        void setUp(FlashSaleInventoryManager manager, String sku, int stock);
+        Outcome buy(FlashSaleInventoryManager manager, String sku, int userId);
+    }
+
+    static class CasPurchase implements Strategy {
+        public String name() { return "cas-purchase"; }
+
+        public void setUp(FlashSaleInventoryManager manager, String sku, int stock) {
+            manager.addProduct(sku, stock);
+        }
+
+        public Outcome buy(FlashSaleInventoryManager manager, String sku, int userId) {
+            String result = manager.purchaseItem(sku, userId);
+            if (result.startsWith("Success")) return Outcome.SOLD;
+            if (result.startsWith("Added to waiting list")) return Outcome.WAITLISTED;
+            return Outcome.REJECTED;
+        }
+    }
+
+    static class LimitedPurchase extends CasPurchase {
+        public String name() { return "cas-limit-1"; }
+
+        public void setUp(FlashSaleInventoryManager manager, String sku, int stock) {
+            manager.addProduct(sku, stock, 1);
+        }
+    }
+
+    static class HoldConfirm extends CasPurchase {
+        public String name() { return "hold-confirm"; }
+
+        public Outcome buy(FlashSaleInventoryManager manager, String sku, int userId) {
+            long holdId = manager.hold(sku, userId, 60_000);
+            if (holdId == FlashSaleInventoryManager.WAITLISTED) return Outcome.WAITLISTED;
+            if (holdId < 0) return Outcome.REJECTED;
+            return manager.confirm(holdId).startsWith("Confirmed") ? Outcome.SOLD : Outcome.REJECTED;
+        }
+    }
+
+    static class SingleLineCheckout extends CasPurchase {
+        public String name() { return "checkout"; }
+
+        public Outcome buy(FlashSaleInventoryManager manager, String sku, int userId) {
+            String result = manager.checkout(Map.of(sku, 1), userId);
+            return result.startsWith("Success") ? Outcome.SOLD : Outcome.REJECTED;
+        }
+    }
+
+    static class SequencedPurchase extends CasPurchase {
+        public String name() { return "sequenced"; }
+
+        public void setUp(FlashSaleInventoryManager manager, String sku, int stock) {
+            manager.addProduct(sku, stock, 0, FlashSaleInventoryManager.Engine.SEQUENCED);
+        }
+    }
+
+    // --- Per-run results ---
+    static class Report {
+        String strategy;
+        long elapsedNanos;
+        long sold, waitlisted, rejected;
+        long p50, p99, p999, max;  // nanoseconds
+        boolean stockInvariant = true;
+        boolean fifoInvariant = true;
+        String failure = "";
+    }
+
+    private final int buyers;
+    private final int skus;
+    private final int stockPerSku;
+    private final double hotFraction;
+
+    FlashSaleLoadTest(int buyers, int skus, int stockPerSku, double hotFraction) {
+        this.buyers = buyers;
+        this.skus = skus;
+        this.stockPerSku = stockPerSku;
+        this.hotFraction = hotFraction;
+    }
+
+    // --- Deterministic SKU choice so every strategy sees the same demand ---
+    private String skuFor(int buyer) {
+        long h = (buyer + 1) * 0x9E3779B97F4A7C15L;
+        double u = (h >>> 11) / (double) (1L << 53);
+        if (u < hotFraction) return "SKU_0";
+        return "SKU_" + (int) ((h >>> 3) % skus);
+    }
+
+    Report run(Strategy strategy) throws InterruptedException {
+        FlashSaleInventoryManager manager = new FlashSaleInventoryManager();
+        for (int i = 0; i < skus; i++) {
+            strategy.setUp(manager, "SKU_" + i, stockPerSku);
+        }
+
+        String[] skuOf = new String[buyers];
+        for (int i = 0; i < buyers; i++) skuOf[i] = skuFor(i);
+
+        Outcome[] outcomes = new Outcome[buyers];
+        long[] started = new long[buyers];
+        long[] finished = new long[buyers];
+        CountDownLatch gate = new CountDownLatch(1);
+
+        long begin;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < buyers; i++) {
+                final int buyer = i;
+                executor.submit(() -> {
+                    gate.await();
+                    started[buyer] = System.nanoTime();
+                    outcomes[buyer] = strategy.buy(manager, skuOf[buyer], buyer);
+                    finished[buyer] = System.nanoTime();
+                    return null;
+                });
+            }
+            begin = System.nanoTime();
+            gate.countDown();
+        } // close() waits for every buyer
+        long end = System.nanoTime();
+
+        Report report = new Report();
+        report.strategy = strategy.name();
+        report.elapsedNanos = end - begin;
+
+        long[] latencies = new long[buyers];
+        Map<String, Long> soldPerSku = new HashMap<>();
+        for (int i = 0; i < buyers; i++) {
+            latencies[i] = finished[i] - started[i];
+            switch (outcomes[i]) {
+                case SOLD -> {
+                    report.sold++;
+                    soldPerSku.merge(skuOf[i], 1L, Long::sum);
+                }
+                case WAITLISTED -> report.waitlisted++;
+                case REJECTED -> report.rejected++;
+            }
+        }
+        Arrays.sort(latencies);
+        report.p50 = latencies[(int) (buyers * 0.50)];
+        report.p99 = latencies[Math.min(buyers - 1, (int) (buyers * 0.99))];
+        report.p999 = latencies[Math.min(buyers - 1, (int) (buyers * 0.999))];
+        report.max = latencies[buyers - 1];
+
+        // Invariant 1: units sold + units left == initial stock, per SKU
+        for (int s = 0; s < skus; s++) {
+            String sku = "SKU_" + s;
+            long sold = soldPerSku.getOrDefault(sku, 0L);
+            int left = manager.getStock(sku);
+            if (sold + left != stockPerSku || left < 0) {
+                report.stockInvariant = false;
+                report.failure += sku + ": sold " + sold + " + left " + left + " != " + stockPerSku + "; ";
+            }
+        }
+
+        // Invariant 2: waiting lists are FIFO in real time. If buyer A's call returned
+        // before buyer B's started, A must be ahead of B in the queue.
+        Map<String, List<Integer>> queued = new HashMap<>();
+        for (int s = 0; s < skus; s++) {
+            String sku = "SKU_" + s;
+            List<Integer> order = new ArrayList<>();
+            Integer next;
+            while ((next = manager.getNextInWaitingList(sku)) != null) order.add(next);
+            queued.put(sku, order);
+        }
+        for (Map.Entry<String, List<Integer>> entry : queued.entrySet()) {
+            long latestStartAhead = Long.MIN_VALUE;
+            for (int buyer : entry.getValue()) {
+                if (finished[buyer] < latestStartAhead) {
+                    report.fifoInvariant = false;
+                    report.failure += entry.getKey() + ": buyer " + buyer + " queued behind a later arrival; ";
+                    break;
+                }
+                latestStartAhead = Math.max(latestStartAhead, started[buyer]);
+            }
+        }
+
+        manager.shutdown();
+        return report;
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    static void print(List<Report> reports) {
+        System.out.printf("%-14s %12s %9s %10s %9s %9s %9s %9s %7s %5s%n",
+                "strategy", "ops/sec", "sold", "waitlist", "p50 us", "p99 us", "p999 us", "max us", "stock", "fifo");
+        for (Report r : reports) {
+            double opsPerSec = (r.sold + r.waitlisted + r.rejected) / (r.elapsedNanos / 1e9);
+            System.out.printf("%-14s %,12.0f %9d %10d %9s %9s %9s %9s %7s %5s%n",
+                    r.strategy, opsPerSec, r.sold, r.waitlisted,
+                    micros(r.p50), micros(r.p99), micros(r.p999), micros(r.max),
+                    r.stockInvariant ? "OK" : "FAIL", r.fifoInvariant ? "OK" : "FAIL");
+            if (!r.failure.isEmpty()) System.out.println("  " + r.failure);
+        }
+    }
+
+    private static String arg(String[] args, String key, String fallback) {
+        for (String a : args) {
+            if (a.startsWith(key + "=")) return a.substring(key.length() + 1);
+        }
+        return fallback;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int buyers = Integer.parseInt(arg(args, "buyers", "200000"));
+        int skus = Integer.parseInt(arg(args, "skus", "10"));
+        int stock = Integer.parseInt(arg(args, "stock", "1000"));
+        double hot = Double.parseDouble(arg(args, "hot", "0.5"));
+
+        System.out.println("Buyers: " + buyers + ", SKUs: " + skus + ", stock/SKU: " + stock + ", hot: " + hot);
+
+        FlashSaleLoadTest test = new FlashSaleLoadTest(buyers, skus, stock, hot);
+        List<Strategy> strategies = List.of(
+                new CasPurchase(), new LimitedPurchase(), new HoldConfirm(), new SingleLineCheckout(),
+                new SequencedPurchase());
+
+        test.run(new CasPurchase()); // warm-up, not reported
+
+        List<Report> reports = new ArrayList<>();
+        for (Strategy strategy : strategies) {
+            reports.add(test.run(strategy));
+        }
+        print(reports);
+    }
+}
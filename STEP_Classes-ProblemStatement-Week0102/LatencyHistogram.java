@@ -0,0 +1,104 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram shared by the caches and simulators.
+ *
+ * Buckets are log-linear, 8 per power of two (~12% precision). Counters are
+ * striped like a LongAdder: each thread increments its bucket in one of
+ * several counter arrays picked by thread id, so threads recording at once
+ * rarely share a cache line, and recording never allocates. summary() adds
+ * the stripes up into a Summary with the count, mean, p50 and p99.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    // A power of two covering the cores, at most 64
+    private static final int STRIPES =
+            Integer.highestOneBit(Math.min(64, Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_COUNT) return (int) Math.max(0, nanos);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    // Largest value that lands in the bucket
+    static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        return ((SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    public void record(long nanos) {
+        stripes[stripeOf(Thread.currentThread())].incrementAndGet(bucketOf(nanos));
+        totalNanos.add(nanos);
+    }
+
+    // Thread ids are sequential; the multiply spreads neighbours over the stripes
+    private static int stripeOf(Thread thread) {
+        int h = (int) thread.threadId() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /** Bucket-by-bucket sum of the stripes; concurrent records may land on either side of it */
+    public Summary summary() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            for (AtomicLongArray stripe : stripes) snapshot[i] += stripe.get(i);
+            count += snapshot[i];
+        }
+        double mean = count == 0 ? 0 : (double) totalNanos.sum() / count;
+        return new Summary(count, mean, percentile(snapshot, count, 0.50), percentile(snapshot, count, 0.99));
+    }
+
+    private static long percentile(long[] snapshot, long count, double quantile) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public static final class Summary {
+        public final long count;
+        public final double meanNanos;
+        public final long p50Nanos;
+        public final long p99Nanos;
+
+        Summary(long count, double meanNanos, long p50Nanos, long p99Nanos) {
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mean %s, p50 %s, p99 %s", format(meanNanos), format(p50Nanos), format(p99Nanos));
+        }
+
+        /** Nanoseconds with a readable unit, e.g. "830 ns", "3.1 us", "1.25 ms" */
+        public static String format(double nanos) {
+            if (nanos < 1_000) return String.format("%.0f ns", nanos);
+            if (nanos < 1_000_000) return String.format("%.1f us", nanos / 1e3);
+            return String.format("%.2f ms", nanos / 1e6);
+        }
+    }
+}
@@ -1,6 +1,21 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class MultiLevelCacheSystem {
+public class MultiLevelCacheSystem implements AutoCloseable {
 
     // -------------------------------
     // Video object
@@ -8,183 +23,1864 @@ public class MultiLevelCacheSystem {
     static class VideoData {
         String videoId;
         String content;  // Simplified video payload
+        String tag;      // Invalidation group, e.g. the channel; may be null
         long lastUpdated;
 
         VideoData(String videoId, String content) {
+            this(videoId, content, null);
+        }
+
+        VideoData(String videoId, String content, String tag) {
+            this(videoId, content, tag, System.currentTimeMillis());
+        }
+
+        VideoData(String videoId, String content, String tag, long lastUpdated) {
             this.videoId = videoId;
             this.content = content;
-            this.lastUpdated = System.currentTimeMillis();
+            this.tag = tag;
+            this.lastUpdated = lastUpdated;
+        }
+
+        String content() {
+            return content;
+        }
+
+        // Payload bytes as a read-only buffer (a view of the chunk for off-heap L1 handles)
+        ByteBuffer payload() {
+            return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+        }
+
+        // Disk record value: [long lastUpdated][int tagLength or -1][tag UTF-8][content UTF-8]
+        byte[] encode() {
+            byte[] tagBytes = tag == null ? new byte[0] : tag.getBytes(StandardCharsets.UTF_8);
+            byte[] text = content().getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(12 + tagBytes.length + text.length).putLong(lastUpdated)
+                    .putInt(tag == null ? -1 : tagBytes.length).put(tagBytes).put(text).array();
+        }
+
+        static VideoData decode(String videoId, byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long lastUpdated = buffer.getLong();
+            int tagLength = buffer.getInt();
+            String tag = tagLength < 0 ? null : new String(bytes, 12, tagLength, StandardCharsets.UTF_8);
+            int start = 12 + Math.max(0, tagLength);
+            String content = new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8);
+            return new VideoData(videoId, content, tag, lastUpdated);
+        }
+    }
+
+    // ------------------------------------------------------
+    // Off-heap L1 handle: id and tag stay on the heap, the
+    // payload sits in a slab chunk. A handle is valid while its
+    // entry is in L1; once evicted the chunk is recycled and
+    // reading through the handle fails. Handles never leave the
+    // cache: getVideo returns a heap copy (readL1), readVideo a
+    // view checked against the chunk's generation
+    // ------------------------------------------------------
+    static class OffHeapVideo extends VideoData {
+        final SlabAllocator.Chunk chunk;
+        final int length;
+
+        OffHeapVideo(VideoData video, SlabAllocator.Chunk chunk, int length) {
+            super(video.videoId, null, video.tag, video.lastUpdated);
+            this.chunk = chunk;
+            this.length = length;
+        }
+
+        @Override
+        String content() {
+            byte[] bytes = new byte[length];
+            chunk.read(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        ByteBuffer payload() {
+            return chunk.view(length);
+        }
+
+        boolean isLive() {
+            return chunk.isLive();
+        }
+
+        VideoData toHeap() {
+            return new VideoData(videoId, content(), tag, lastUpdated);
+        }
+    }
+
+    // ------------------------------------------------------
+    // Source of record behind the cache (L3)
+    // ------------------------------------------------------
+    public interface VideoLoader {
+        VideoData load(String videoId);   // null if the source has no such video
+
+        // One round trip for many ids; the result has no entry for ids the source lacks
+        default Map<String, VideoData> loadAll(Collection<String> videoIds) {
+            Map<String, VideoData> videos = new HashMap<>();
+            for (String videoId : videoIds) {
+                VideoData video = load(videoId);
+                if (video != null) videos.put(videoId, video);
+            }
+            return videos;
+        }
+
+        void store(VideoData video);
+
+        void delete(String videoId);
+    }
+
+    // In-process stand-in for the database with a configurable per-call latency
+    public static class SimulatedVideoDatabase implements VideoLoader {
+        private final Map<String, VideoData> rows = new ConcurrentHashMap<>();
+        private final long latencyMillis;
+        final LongAdder loads = new LongAdder();
+        final LongAdder stores = new LongAdder();
+
+        public SimulatedVideoDatabase(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        private void simulateLatency() {
+            if (latencyMillis <= 0) return;
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public VideoData load(String videoId) {
+            loads.increment();
+            simulateLatency();
+            return rows.get(videoId);
+        }
+
+        // A batch costs one round trip and counts as one load
+        public Map<String, VideoData> loadAll(Collection<String> videoIds) {
+            loads.increment();
+            simulateLatency();
+            Map<String, VideoData> videos = new HashMap<>();
+            for (String videoId : videoIds) {
+                VideoData video = rows.get(videoId);
+                if (video != null) videos.put(videoId, video);
+            }
+            return videos;
+        }
+
+        public void store(VideoData video) {
+            stores.increment();
+            simulateLatency();
+            rows.put(video.videoId, video);
+        }
+
+        public void delete(String videoId) {
+            simulateLatency();
+            rows.remove(videoId);
+        }
+
+        // Seeding without the simulated latency
+        void seed(VideoData video) {
+            rows.put(video.videoId, video);
+        }
+    }
+
+    // How putVideo() keeps the cache and the source of record in step
+    public enum WriteMode {
+        WRITE_AROUND,   // write to the source, drop the cached copy, next read reloads it
+        WRITE_THROUGH,  // write to the source, then replace the cached copy
+        WRITE_BEHIND    // replace the cached copy now, flush to the source in the background
+    }
+
+    // ------------------------------------------------------
+    // Weighers: how many bytes of a tier's budget a video uses
+    // ------------------------------------------------------
+    public interface Weigher {
+        int weigh(VideoData video);
+    }
+
+    // Approximate heap footprint: object headers + UTF-16 strings
+    public static final Weigher HEAP_WEIGHER =
+            video -> 64 + 2 * video.videoId.length() + 2 * video.content().length();
+
+    // Size of the encoded record value on disk
+    public static final Weigher DISK_WEIGHER = video -> 12 + utf8Length(video.tag) + utf8Length(video.content());
+
+    private static int utf8Length(String text) {
+        if (text == null) return 0;
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) bytes += 1;
+            else if (c < 0x800) bytes += 2;
+            else if (Character.isHighSurrogate(c)) { bytes += 4; i++; }
+            else bytes += 3;
+        }
+        return bytes;
+    }
+
+    // ------------------------------------------------------
+    // Lock-striped LRU tier: a key always maps to the same
+    // segment index in every tier, each segment has its own lock
+    // and an equal share of the tier's byte budget
+    // ------------------------------------------------------
+    static class CacheTier<V> {
+        static final int SEGMENTS = 64;
+
+        private final List<Segment<V>> segments = new ArrayList<>(SEGMENTS);
+
+        CacheTier(long maxWeight, Evictor<V> evictor) {
+            this(maxWeight, evictor, (id, entry) -> { });
+        }
+
+        // remover sees every entry that leaves a segment: evicted, removed or replaced
+        CacheTier(long maxWeight, Evictor<V> evictor, Evictor<V> remover) {
+            long perSegment = Math.max(1, maxWeight / SEGMENTS);
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments.add(new Segment<>(perSegment, evictor, remover));
+            }
+        }
+
+        static int segmentIndex(String videoId) {
+            int h = videoId.hashCode();
+            return (h ^ (h >>> 16)) & (SEGMENTS - 1);
+        }
+
+        Segment<V> segment(int index) {
+            return segments.get(index);
+        }
+
+        int size() {
+            int size = 0;
+            for (Segment<V> segment : segments) {
+                segment.lock.lock();
+                try {
+                    size += segment.map.size();
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+            return size;
+        }
+
+        long weight() {
+            long weight = 0;
+            for (Segment<V> segment : segments) {
+                segment.lock.lock();
+                try {
+                    weight += segment.weight;
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+            return weight;
+        }
+    }
+
+    // Called under the segment lock for every LRU eviction
+    interface Evictor<V> {
+        void evicted(String videoId, CacheEntry<V> entry);
+    }
+
+    // stamp = invalidation epoch when the value was read from its source
+    static class CacheEntry<V> {
+        final V value;
+        final int weight;
+        final String tag;
+        final long stamp;
+        volatile boolean referenced; // read since it last reached the LRU end
+
+        CacheEntry(V value, int weight, String tag, long stamp) {
+            this.value = value;
+            this.weight = weight;
+            this.tag = tag;
+            this.stamp = stamp;
+        }
+    }
+
+    // ------------------------------------------------------
+    // TinyLFU frequency sketch: 4-bit count-min counters packed
+    // 16 per long, fixed size, all counters halved every
+    // sampleSize increments so old popularity fades away
+    // ------------------------------------------------------
+    static class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final AtomicLongArray table;
+        private final int tableMask;
+        private final int sampleSize;
+        private final AtomicInteger additions = new AtomicInteger();
+        private final ReentrantLock resetLock = new ReentrantLock();
+
+        FrequencySketch(int tableSize) {
+            int size = Integer.highestOneBit(Math.max(16, tableSize - 1) << 1);
+            this.table = new AtomicLongArray(size);
+            this.tableMask = size - 1;
+            this.sampleSize = 10 * size;
+        }
+
+        private static int spread(String key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private int indexOf(int hash, int depth) {
+            long h = (hash + SEEDS[depth]) * SEEDS[depth];
+            h += h >>> 32;
+            return (int) h & tableMask;
+        }
+
+        // Counter 0..15 within the long; each depth uses a different nibble group
+        private static int offsetOf(int hash, int depth) {
+            return ((hash >>> (depth << 3)) & 3) + (depth << 2);
+        }
+
+        int frequency(String key) {
+            int hash = spread(key);
+            int frequency = 15;
+            for (int depth = 0; depth < 4; depth++) {
+                int shift = offsetOf(hash, depth) << 2;
+                int count = (int) ((table.get(indexOf(hash, depth)) >>> shift) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(String key) {
+            int hash = spread(key);
+            boolean added = false;
+            for (int depth = 0; depth < 4; depth++) {
+                added |= incrementAt(indexOf(hash, depth), offsetOf(hash, depth) << 2);
+            }
+            if (added && additions.incrementAndGet() >= sampleSize) reset();
+        }
+
+        private boolean incrementAt(int index, int shift) {
+            while (true) {
+                long current = table.get(index);
+                if (((current >>> shift) & 0xfL) == 0xfL) return false; // saturated
+                if (table.compareAndSet(index, current, current + (1L << shift))) return true;
+            }
+        }
+
+        // Halve every counter; one thread does it, concurrent increments may race harmlessly
+        private void reset() {
+            if (!resetLock.tryLock()) return;
+            try {
+                if (additions.get() < sampleSize) return;
+                for (int i = 0; i <= tableMask; i++) {
+                    long current;
+                    do {
+                        current = table.get(i);
+                    } while (!table.compareAndSet(i, current, (current >>> 1) & RESET_MASK));
+                }
+                additions.set(additions.get() / 2);
+            } finally {
+                resetLock.unlock();
+            }
+        }
+    }
+
+    // ------------------------------------------------------
+    // Successor table for prefetching: direct-mapped, one slot
+    // per predecessor video remembering the video that usually
+    // follows it. Confidence goes up when the same successor is
+    // seen again and down otherwise; slots are swapped with CAS,
+    // a lost race only drops one observation. Each viewer's last
+    // video is kept the same way, a viewer whose slot another one
+    // took over just starts a new history
+    // ------------------------------------------------------
+    static class SuccessorTable {
+        static final int MAX_CONFIDENCE = 3;
+
+        static final class Successor {
+            final String predecessor;
+            final String successor;
+            final int confidence;
+
+            Successor(String predecessor, String successor, int confidence) {
+                this.predecessor = predecessor;
+                this.successor = successor;
+                this.confidence = confidence;
+            }
+        }
+
+        static final class LastVideo {
+            final String viewerId;
+            final String videoId;
+
+            LastVideo(String viewerId, String videoId) {
+                this.viewerId = viewerId;
+                this.videoId = videoId;
+            }
+        }
+
+        private final AtomicReferenceArray<Successor> slots;
+        private final AtomicReferenceArray<LastVideo> viewers;
+        private final int mask;
+
+        SuccessorTable(int size) {
+            int capacity = Integer.highestOneBit(Math.max(16, size - 1) << 1);
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.viewers = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private int slot(String id) {
+            int h = id.hashCode() * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        // Records videoId as the viewer's latest; returns the one before it, or null
+        String advance(String viewerId, String videoId) {
+            LastVideo last = viewers.getAndSet(slot(viewerId), new LastVideo(viewerId, videoId));
+            return last != null && last.viewerId.equals(viewerId) ? last.videoId : null;
+        }
+
+        void learn(String predecessor, String successor) {
+            int slot = slot(predecessor);
+            Successor current = slots.get(slot);
+            Successor next;
+            if (current == null) {
+                next = new Successor(predecessor, successor, 1);
+            } else if (!current.predecessor.equals(predecessor) || !current.successor.equals(successor)) {
+                // Another pattern holds the slot: weaken it, take over once it is gone
+                next = current.confidence > 1
+                        ? new Successor(current.predecessor, current.successor, current.confidence - 1)
+                        : new Successor(predecessor, successor, 1);
+            } else if (current.confidence < MAX_CONFIDENCE) {
+                next = new Successor(predecessor, successor, current.confidence + 1);
+            } else {
+                return;
+            }
+            slots.compareAndSet(slot, current, next);
+        }
+
+        // The expected next video, or null if the pattern is not confident enough
+        String predict(String videoId, int minConfidence) {
+            Successor current = slots.get(slot(videoId));
+            if (current == null || current.confidence < minConfidence || !current.predecessor.equals(videoId)) {
+                return null;
+            }
+            return current.successor;
+        }
+    }
+
+    // ------------------------------------------------------
+    // All methods except peek/recordRead must be called with
+    // lock held. The access-ordered map mutates on every get, so
+    // hits read a concurrent copy of it instead (peek) and only
+    // set the entry's referenced bit; eviction gives referenced
+    // entries a second chance at the MRU end (CLOCK-style), so a
+    // hot key costs no shared write once its bit is set
+    // ------------------------------------------------------
+    static class Segment<V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, CacheEntry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+        final ConcurrentHashMap<String, CacheEntry<V>> entries = new ConcurrentHashMap<>(); // same contents as map
+        final long maxWeight;
+        final Evictor<V> evictor;
+        final Evictor<V> remover;
+        long weight = 0;
+
+        Segment(long maxWeight, Evictor<V> evictor, Evictor<V> remover) {
+            this.maxWeight = maxWeight;
+            this.evictor = evictor;
+            this.remover = remover;
+        }
+
+        // Lock-free read; does not touch LRU order
+        CacheEntry<V> peek(String videoId) {
+            return entries.get(videoId);
+        }
+
+        // Lock-free; writes only when the bit is clear
+        void recordRead(CacheEntry<V> entry) {
+            if (!entry.referenced) entry.referenced = true;
+        }
+
+        CacheEntry<V> get(String videoId) {
+            return map.get(videoId);
+        }
+
+        boolean containsKey(String videoId) {
+            return map.containsKey(videoId);
+        }
+
+        // False if the entry alone exceeds the segment budget and is not cached
+        boolean put(String videoId, CacheEntry<V> entry) {
+            if (entry.weight > maxWeight) return false;
+
+            remove(videoId);
+            reserve(entry.weight);
+            map.put(videoId, entry);
+            entries.put(videoId, entry);
+            weight += entry.weight;
+            return true;
+        }
+
+        // Evict least recently used entries until entryWeight more fits the budget
+        void reserve(int entryWeight) {
+            while (weight + entryWeight > maxWeight) {
+                String victim = eldestKey();
+                if (victim == null) return;
+                CacheEntry<V> entry = map.remove(victim);
+                entries.remove(victim);
+                weight -= entry.weight;
+                evictor.evicted(victim, entry);
+                remover.evicted(victim, entry);
+            }
+        }
+
+        // Next LRU victim, or null when empty; referenced entries move to the MRU end once
+        String eldestKey() {
+            for (int chances = map.size(); ; chances--) {
+                Iterator<Map.Entry<String, CacheEntry<V>>> lru = map.entrySet().iterator();
+                if (!lru.hasNext()) return null;
+                Map.Entry<String, CacheEntry<V>> eldest = lru.next();
+                if (chances <= 0 || !eldest.getValue().referenced) return eldest.getKey();
+                eldest.getValue().referenced = false;
+                map.get(eldest.getKey());
+            }
+        }
+
+        // The key eldestKey() would return, without clearing referenced bits or moving entries
+        String peekEldestKey() {
+            String eldest = null;
+            for (Map.Entry<String, CacheEntry<V>> entry : map.entrySet()) {
+                if (eldest == null) eldest = entry.getKey();
+                if (!entry.getValue().referenced) return entry.getKey();
+            }
+            return eldest;
+        }
+
+        CacheEntry<V> remove(String videoId) {
+            CacheEntry<V> entry = map.remove(videoId);
+            if (entry != null) {
+                entries.remove(videoId);
+                weight -= entry.weight;
+                remover.evicted(videoId, entry);
+            }
+            return entry;
+        }
+    }
+
+    // --------------------------------------------
+    // L1 Cache (In-memory, byte budget, LRU)
+    // --------------------------------------------
+    public static final long DEFAULT_L1_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final Weigher L1Weigher;
+
+    private final CacheTier<VideoData> L1Cache;
+
+    // Off-heap mode: L1 segments hold OffHeapVideo handles, payloads live in slabs
+    private volatile SlabAllocator OffHeapSlabs;  // null → payloads on the heap
+
+    // ------------------------------------------------------
+    // L2 Cache (SSD-backed): payloads live in an append-only log
+    // of memory-mapped segment files; the segment maps keep LRU
+    // order over videoId → record size on disk
+    // ------------------------------------------------------
+    public static final long DEFAULT_L2_MAX_BYTES = 1024L * 1024 * 1024;
+
+    private final VideoDiskStore SSDStorage;
+
+    private final Weigher L2Weigher;
+
+    private final CacheTier<Integer> L2Cache;
+
+    // ------------------------------------------------------
+    // Compressed L2 (optional): records are packed by L2Codec and
+    // weighed by their packed size; a small decoded working set
+    // per L2 segment (guarded by that segment's lock) saves
+    // decompressing videos that are read again without promotion
+    // ------------------------------------------------------
+    private volatile PayloadCodec L2Codec;  // null → raw records, weighed by L2Weigher
+    private volatile List<LinkedHashMap<String, VideoData>> DecodedL2;
+    private int decodedPerSegment;
+
+    // ------------------------------------------------------
+    // Exclusive tiers: L1 evictions are demoted into L2 by a
+    // background writer (served from pendingDemotions until the
+    // write lands), L2 evictions optionally go to a cold file tier
+    // ------------------------------------------------------
+    private volatile boolean demoteOnEvict = true;
+
+    private final Map<String, CacheEntry<VideoData>> pendingDemotions = new ConcurrentHashMap<>();
+
+    private final ExecutorService demotionWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "video-cache-demotion");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile VideoDiskStore ColdStorage;  // null → L2 evictions are dropped
+    private volatile CacheTier<Integer> ColdCache;
+
+    public MultiLevelCacheSystem() {
+        this(VideoDiskStore.createTemp("video-l2-"));
+    }
+
+    public MultiLevelCacheSystem(VideoDiskStore ssdStorage) {
+        this(ssdStorage, DEFAULT_L1_MAX_BYTES, HEAP_WEIGHER, DEFAULT_L2_MAX_BYTES, DISK_WEIGHER);
+    }
+
+    public MultiLevelCacheSystem(VideoDiskStore ssdStorage,
+                                 long l1MaxBytes, Weigher l1Weigher,
+                                 long l2MaxBytes, Weigher l2Weigher) {
+        this(new SimulatedVideoDatabase(0), ssdStorage, l1MaxBytes, l1Weigher, l2MaxBytes, l2Weigher);
+    }
+
+    public MultiLevelCacheSystem(VideoLoader loader, VideoDiskStore ssdStorage,
+                                 long l1MaxBytes, Weigher l1Weigher,
+                                 long l2MaxBytes, Weigher l2Weigher) {
+        this.L3Database = loader;
+        this.SSDStorage = ssdStorage;
+        this.L1Weigher = l1Weigher;
+        this.L2Weigher = l2Weigher;
+        this.L1Cache = new CacheTier<>(l1MaxBytes, this::onL1Evict, this::releaseL1);
+        this.L2Cache = new CacheTier<>(l2MaxBytes, this::onL2Evict, this::releaseL2);
+        writeBehindFlusher.scheduleWithFixedDelay(this::flushWrites, 100, 100, TimeUnit.MILLISECONDS);
+    }
+
+    // ---------------------------------------------
+    // Optional cold tier below L2 (call before serving requests)
+    // ---------------------------------------------
+    public void enableColdTier(VideoDiskStore coldStorage, long maxBytes) {
+        this.ColdCache = new CacheTier<>(maxBytes, (id, entry) -> coldStorage.remove(id));
+        this.ColdStorage = coldStorage;
+    }
+
+    // ---------------------------------------------
+    // Optional off-heap L1 (call before serving requests): the
+    // L1 byte budget becomes the slab budget and entries are
+    // weighed by the chunk they occupy
+    // ---------------------------------------------
+    public void enableOffHeapL1() {
+        enableOffHeapL1(SlabAllocator.DEFAULT_SLAB_BYTES);
+    }
+
+    public void enableOffHeapL1(int slabBytes) {
+        long budget = L1Cache.segment(0).maxWeight * CacheTier.SEGMENTS;
+        this.OffHeapSlabs = new SlabAllocator(budget, slabBytes);
+    }
+
+    // ---------------------------------------------
+    // Optional L2 compression (call before serving requests)
+    // ---------------------------------------------
+    public void enableL2Compression(PayloadCodec codec, int decodedWorkingSet) {
+        List<LinkedHashMap<String, VideoData>> decoded = new ArrayList<>(CacheTier.SEGMENTS);
+        for (int i = 0; i < CacheTier.SEGMENTS; i++) decoded.add(new LinkedHashMap<>(16, 0.75f, true));
+        this.decodedPerSegment = Math.max(1, decodedWorkingSet / CacheTier.SEGMENTS);
+        this.DecodedL2 = decoded;
+        this.L2Codec = codec;
+    }
+
+    public void enablePrefetch() {
+        this.prefetchTable = new SuccessorTable(1 << 16);
+    }
+
+    public void setDemoteOnEvict(boolean demoteOnEvict) {
+        this.demoteOnEvict = demoteOnEvict;
+    }
+
+    // --------------------------------------------
+    // L3 Database (slow), reached through the loader only
+    // --------------------------------------------
+    private final VideoLoader L3Database;
+
+    private volatile WriteMode writeMode = WriteMode.WRITE_THROUGH;
+
+    // One in-flight load per videoId; concurrent misses wait on it
+    private final Map<String, CompletableFuture<VideoData>> inFlightLoads = new ConcurrentHashMap<>();
+
+    // Write-behind: latest unflushed version per videoId
+    private final Map<String, VideoData> dirtyVideos = new ConcurrentHashMap<>();
+
+    // Epoch of the latest putVideo/deleteVideo per stripe of videoIds (collisions only skip a fill)
+    static final int WRITE_STRIPES = 1024;
+
+    private final AtomicLongArray lastWriteStamps = new AtomicLongArray(WRITE_STRIPES);
+
+    private final ScheduledExecutorService writeBehindFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "video-cache-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // ---------------------------------------------
+    // Prefetch (optional): requests that carry a viewer id teach
+    // the successor table that viewer's access stream; confident
+    // successors of the video just requested are loaded into L2
+    // on virtual threads
+    // ---------------------------------------------
+    static final int PREFETCH_MIN_CONFIDENCE = 2;
+    static final int MAX_PREFETCHES_IN_FLIGHT = 64;
+
+    private volatile SuccessorTable prefetchTable;  // null → prefetch off
+
+    private final ExecutorService prefetcher = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicInteger prefetchesInFlight = new AtomicInteger();
+
+    // Prefetched into L2 and not requested yet
+    private final Set<String> prefetched = ConcurrentHashMap.newKeySet();
+
+    // ---------------------------------------------
+    // Bulk invalidation by generation: invalidateTag/invalidateAll
+    // only record the current epoch; entries stamped before it are
+    // stale and get dropped lazily when a lookup touches them
+    // ---------------------------------------------
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    private volatile long allInvalidatedAt = 0;
+
+    private final Map<String, AtomicLong> tagInvalidatedAt = new ConcurrentHashMap<>();
+
+    // ---------------------------------------------
+    // Access frequency (for promotion L2 → L1): fixed 512 KB,
+    // a candidate only enters a full L1 if it is more popular
+    // than the entry it would evict
+    // ---------------------------------------------
+    private final FrequencySketch accessFrequency = new FrequencySketch(1 << 16);
+
+    // ---------------------------------------------
+    // Statistics (striped counters, safe to bump from any thread)
+    // ---------------------------------------------
+    private final LongAdder L1Hits = new LongAdder(), L1Miss = new LongAdder();
+    private final LongAdder L2Hits = new LongAdder(), L2Miss = new LongAdder();
+    private final LongAdder ColdHits = new LongAdder(), ColdMiss = new LongAdder();
+    private final LongAdder L3Hits = new LongAdder(), L3Miss = new LongAdder();
+    private final LongAdder CoalescedLoads = new LongAdder();
+    private final LongAdder FailedFlushes = new LongAdder();
+    private final LongAdder Demotions = new LongAdder();
+    private final LongAdder PrefetchesIssued = new LongAdder(), PrefetchHits = new LongAdder();
+    private final LongAdder L2RawBytes = new LongAdder(), L2PackedBytes = new LongAdder();
+    private final LongAdder Compressions = new LongAdder(), CompressNanos = new LongAdder();
+    private final LongAdder Decompressions = new LongAdder(), DecompressNanos = new LongAdder();
+    private final LongAdder DecodedHits = new LongAdder();
+    private final LongAdder totalRequests = new LongAdder();
+
+    // Measured time spent in each tier (hit or miss) and end to end
+    private final LatencyHistogram L1Latency = new LatencyHistogram();
+    private final LatencyHistogram L2Latency = new LatencyHistogram();
+    private final LatencyHistogram ColdLatency = new LatencyHistogram();
+    private final LatencyHistogram L3Latency = new LatencyHistogram();
+    private final LatencyHistogram ResponseLatency = new LatencyHistogram();
+
+    // ---------------------------------------------
+    // Put initial data into L3 database
+    // ---------------------------------------------
+    public void addToDatabase(String videoId, String content) {
+        addToDatabase(videoId, content, null);
+    }
+
+    public void addToDatabase(String videoId, String content, String tag) {
+        VideoData video = new VideoData(videoId, content, tag);
+        if (L3Database instanceof SimulatedVideoDatabase) {
+            ((SimulatedVideoDatabase) L3Database).seed(video);
+        } else {
+            L3Database.store(video);
+        }
+    }
+
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    // ---------------------------------------------
+    // Write a new version according to the write mode
+    // ---------------------------------------------
+    public void putVideo(String videoId, String content) {
+        putVideo(videoId, content, null);
+    }
+
+    public void putVideo(String videoId, String content, String tag) {
+        VideoData video = new VideoData(videoId, content, tag);
+        int index = CacheTier.segmentIndex(videoId);
+        recordWrite(videoId);
+
+        switch (writeMode) {
+            case WRITE_AROUND -> {
+                L3Database.store(video);
+                dropCachedCopy(index, videoId);
+            }
+            case WRITE_THROUGH -> {
+                L3Database.store(video);
+                replaceCachedCopy(index, video);
+            }
+            case WRITE_BEHIND -> {
+                dirtyVideos.put(videoId, video);
+                replaceCachedCopy(index, video);
+            }
+        }
+    }
+
+    // Flush dirty versions. Each store runs inside computeIfPresent, which holds the key's map
+    // bin: a deleteVideo waits in dirtyVideos.remove until the store is done and then deletes
+    // the row, a newer putVideo waits and stays queued. A failed store leaves the version queued
+    private void flushWrites() {
+        for (String videoId : dirtyVideos.keySet()) {
+            try {
+                dirtyVideos.computeIfPresent(videoId, (id, video) -> {
+                    L3Database.store(video);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                FailedFlushes.increment();
+                System.err.println("video-cache-write-behind: store of " + videoId + " failed, retrying: " + e);
+            }
+        }
+    }
+
+    // Stores the write-behind flusher has retried
+    public long getFailedFlushes() {
+        return FailedFlushes.sum();
+    }
+
+    // Stamp a write so loader fills that read the source before it are not cached
+    private void recordWrite(String videoId) {
+        long stamp = invalidationEpoch.incrementAndGet();
+        lastWriteStamps.accumulateAndGet(writeStripe(videoId), stamp, Math::max);
+    }
+
+    private boolean writtenSince(String videoId, long stamp) {
+        return lastWriteStamps.get(writeStripe(videoId)) > stamp;
+    }
+
+    private static int writeStripe(String videoId) {
+        int h = videoId.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (WRITE_STRIPES - 1);
+    }
+
+    // ---------------------------------------------
+    // Get video (L1 → L2 → L3), safe for concurrent callers;
+    // viewerId (may be null) names the session for prefetching
+    // ---------------------------------------------
+    public VideoData getVideo(String videoId) {
+        return getVideo(videoId, null);
+    }
+
+    public VideoData getVideo(String videoId, String viewerId) {
+        totalRequests.increment();
+        observeForPrefetch(viewerId, videoId);
+        int index = CacheTier.segmentIndex(videoId);
+        long start = System.nanoTime();
+
+        // L1 check
+        VideoData video = readL1(L1Cache.segment(index), videoId);
+        long l1Done = System.nanoTime();
+        L1Latency.record(l1Done - start);
+        if (video != null) {
+            L1Hits.increment();
+            recordAccess(videoId);
+            return respond(video, start, l1Done);
+        }
+        L1Miss.increment();
+
+        // L2 check (reads the record from the mapped segment file)
+        CacheEntry<VideoData> l2Entry = readL2(index, videoId);
+        if (l2Entry != null) {
+            // Promotion logic: promote to L1 if it beats the L1 victim
+            recordAccess(videoId);
+            promoteToL1(index, l2Entry);
+
+            long l2Done = System.nanoTime();
+            L2Latency.record(l2Done - l1Done);
+            L2Hits.increment();
+            countPrefetchHit(videoId);
+            return respond(l2Entry.value, start, l2Done);
+        }
+
+        // The lock-free L1 read and the L2 read can both miss while a promotion or
+        // demotion moves the entry between them. With both segments held nothing
+        // moves, so look again, and keep holding them through the cold tier
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
+        CacheEntry<VideoData> coldEntry = null;
+        long l2Done;
+        long coldDone;
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            video = readHeld(index, videoId);
+            l2Done = System.nanoTime();
+            // Cold file tier: move back up into L2 (tiers stay exclusive)
+            if (video == null && ColdCache != null) coldEntry = moveColdToL2(index, videoId);
+            coldDone = System.nanoTime();
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
+        }
+
+        L2Latency.record(l2Done - l1Done);
+        if (video != null) {
+            L2Hits.increment();
+            recordAccess(videoId);
+            return respond(video, start, l2Done);
+        }
+        L2Miss.increment();
+
+        if (ColdCache != null) {
+            ColdLatency.record(coldDone - l2Done);
+            if (coldEntry != null) {
+                ColdHits.increment();
+                recordAccess(videoId);
+                return respond(coldEntry.value, start, coldDone);
+            }
+            ColdMiss.increment();
+        }
+
+        // L3 database check (slow), one load per key however many callers miss
+        video = loadCoalesced(index, videoId);
+        long l3Done = System.nanoTime();
+        L3Latency.record(l3Done - coldDone);
+        if (video != null) {
+            L3Hits.increment();
+            recordAccess(videoId);
+        } else {
+            L3Miss.increment(); // Not found anywhere
+        }
+        return respond(video, start, l3Done);
+    }
+
+    private VideoData respond(VideoData video, long start, long end) {
+        ResponseLatency.record(end - start);
+        return video;
+    }
+
+    // Reads a payload in place for readVideo(); the buffer is only valid during the call
+    public interface PayloadReader<R> {
+        R read(ByteBuffer payload);
+    }
+
+    // ---------------------------------------------
+    // Zero-copy read: an off-heap L1 hit hands reader a read-only
+    // view of its slab chunk instead of a heap copy, and the
+    // chunk's generation is checked after the reader returns. If
+    // the chunk was recycled meanwhile the result is discarded and
+    // the reader runs again on a heap copy, so a reader must not
+    // keep the buffer and may run twice. Anything but an off-heap
+    // L1 hit takes the getVideo path. Null if there is no video
+    // ---------------------------------------------
+    public <R> R readVideo(String videoId, PayloadReader<R> reader) {
+        long start = System.nanoTime();
+        VideoData cached = OffHeapSlabs == null ? null : lookup(L1Cache.segment(CacheTier.segmentIndex(videoId)), videoId);
+        if (cached instanceof OffHeapVideo handle) {
+            long l1Done = System.nanoTime();
+            try {
+                R result = reader.read(handle.payload());
+                if (handle.chunk.validate()) {
+                    totalRequests.increment();
+                    observeForPrefetch(null, videoId);
+                    L1Latency.record(l1Done - start);
+                    L1Hits.increment();
+                    recordAccess(videoId);
+                    ResponseLatency.record(l1Done - start);
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (handle.chunk.validate()) throw e; // the reader's own failure, not recycled bytes
+            }
+        }
+
+        VideoData video = getVideo(videoId);
+        return video == null ? null : reader.read(video.payload());
+    }
+
+    // L1, L2 or a pending demotion, read with both segment locks held (re-entrant: callers may
+    // already hold them) so no entry moves between tiers mid-read
+    private VideoData readHeld(int index, String videoId) {
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
+
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            VideoData video = readL1(l1, videoId);
+            if (video != null) return video;
+            CacheEntry<VideoData> entry = readL2(index, videoId);
+            if (entry != null) return entry.value;
+
+            // Evicted from L1 but the demotion write has not landed yet
+            CacheEntry<VideoData> pending = pendingDemotions.get(videoId);
+            return pending != null && !isStale(pending.tag, pending.stamp) ? pending.value : null;
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
+        }
+    }
+
+    // ---------------------------------------------
+    // Batched multi-get: each tier is resolved for the whole
+    // batch in one pass (each L2 segment lock taken once), and all
+    // L3 misses go to the source in a single loadAll call.
+    // Results line up with videoIds, null where not found
+    // ---------------------------------------------
+    public List<VideoData> getVideos(List<String> videoIds) {
+        return getVideos(videoIds, null);
+    }
+
+    public List<VideoData> getVideos(List<String> videoIds, String viewerId) {
+        Set<String> distinct = new LinkedHashSet<>(videoIds);
+        int count = distinct.size();
+        totalRequests.add(count);
+        Map<String, VideoData> found = new HashMap<>();
+        long start = System.nanoTime();
+
+        // L1 pass
+        List<List<String>> bySegment = groupBySegment(distinct);
+        List<String> missing = new ArrayList<>();
+        for (int index = 0; index < CacheTier.SEGMENTS; index++) {
+            List<String> ids = bySegment.get(index);
+            if (ids == null) continue;
+
+            Segment<VideoData> segment = L1Cache.segment(index);
+            for (String videoId : ids) {
+                VideoData video = readL1(segment, videoId);  // lock-free on hits
+                if (video != null) found.put(videoId, video);
+                else missing.add(videoId);
+            }
+        }
+        long l1Done = System.nanoTime();
+        recordAmortized(L1Latency, l1Done - start, count);
+        L1Hits.add(count - missing.size());
+        L1Miss.add(missing.size());
+
+        // L2 pass (records read under one lock per segment, promotions after)
+        List<String> l2Missing = new ArrayList<>();
+        List<CacheEntry<VideoData>> l2Found = new ArrayList<>();
+        bySegment = groupBySegment(missing);
+        for (int index = 0; index < CacheTier.SEGMENTS; index++) {
+            List<String> ids = bySegment.get(index);
+            if (ids == null) continue;
+
+            Segment<Integer> segment = L2Cache.segment(index);
+            segment.lock.lock();
+            try {
+                for (String videoId : ids) {
+                    CacheEntry<VideoData> entry = readL2(index, videoId);
+                    if (entry != null) l2Found.add(entry);
+                    else l2Missing.add(videoId);
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        for (CacheEntry<VideoData> entry : l2Found) {
+            String videoId = entry.value.videoId;
+            promoteToL1(CacheTier.segmentIndex(videoId), entry);
+            found.put(videoId, entry.value);
+            countPrefetchHit(videoId);
         }
+
+        // Misses are checked again with the tiers held (pending demotions count as L2),
+        // then the cold tier moves back up into L2
+        List<String> toLoad = new ArrayList<>();
+        long coldHits = 0;
+        for (String videoId : l2Missing) {
+            int index = CacheTier.segmentIndex(videoId);
+            Segment<VideoData> l1 = L1Cache.segment(index);
+            Segment<Integer> l2 = L2Cache.segment(index);
+            l1.lock.lock();
+            l2.lock.lock();
+            try {
+                VideoData held = readHeld(index, videoId);
+                CacheEntry<VideoData> coldEntry = held == null ? moveColdToL2(index, videoId) : null;
+                if (held != null) {
+                    found.put(videoId, held);
+                } else if (coldEntry != null) {
+                    found.put(videoId, coldEntry.value);
+                    coldHits++;
+                } else {
+                    toLoad.add(videoId);
+                }
+            } finally {
+                l2.lock.unlock();
+                l1.lock.unlock();
+            }
+        }
+        long l2Done = System.nanoTime();
+        int l2Accesses = missing.size();
+        recordAmortized(L2Latency, l2Done - l1Done, l2Accesses);
+        L2Hits.add(l2Accesses - toLoad.size() - coldHits);
+        L2Miss.add(toLoad.size() + coldHits);
+        if (ColdCache != null) {
+            ColdHits.add(coldHits);
+            ColdMiss.add(toLoad.size());
+        }
+
+        // L3 pass: one batched load for everything still missing
+        if (!toLoad.isEmpty()) {
+            Map<String, VideoData> loaded = loadAllCoalesced(toLoad);
+            found.putAll(loaded);
+            long l3Done = System.nanoTime();
+            recordAmortized(L3Latency, l3Done - l2Done, toLoad.size());
+            L3Hits.add(loaded.size());
+            L3Miss.add(toLoad.size() - loaded.size());
+        }
+        recordAmortized(ResponseLatency, System.nanoTime() - start, count);
+
+        List<VideoData> result = new ArrayList<>(videoIds.size());
+        for (String videoId : videoIds) {
+            VideoData video = found.get(videoId);
+            if (video != null) recordAccess(videoId);
+            result.add(video);
+        }
+        SuccessorTable table = prefetchTable;
+        if (table != null) {
+            // Playlist order teaches successors; with a viewer the batch continues their history
+            String previous = null;
+            for (String videoId : distinct) {
+                learnAndPrefetch(table, viewerId == null ? previous : table.advance(viewerId, videoId), videoId);
+                previous = videoId;
+            }
+        }
+        return result;
     }
 
-    // --------------------------------------------
-    // L1 Cache (In-memory, max 10,000 videos, LRU)
-    // --------------------------------------------
-    private final int L1_CAPACITY = 10_000;
+    private static List<List<String>> groupBySegment(Collection<String> videoIds) {
+        List<List<String>> bySegment = new ArrayList<>(Collections.nCopies(CacheTier.SEGMENTS, (List<String>) null));
+        for (String videoId : videoIds) {
+            int index = CacheTier.segmentIndex(videoId);
+            if (bySegment.get(index) == null) bySegment.set(index, new ArrayList<>());
+            bySegment.get(index).add(videoId);
+        }
+        return bySegment;
+    }
 
-    private final LinkedHashMap<String, VideoData> L1Cache =
-            new LinkedHashMap<String, VideoData>(16, 0.75f, true) {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, VideoData> eldest) {
-                    return size() > L1_CAPACITY;
-                }
-            };
+    // A batch pass charged evenly to the accesses it served
+    private static void recordAmortized(LatencyHistogram histogram, long nanos, int accesses) {
+        for (int i = 0; i < accesses; i++) histogram.record(nanos / accesses);
+    }
 
-    // ------------------------------------------------------
-    // L2 Cache (SSD-backed, represented as file paths here)
-    // LinkedHashMap for LRU + HashMap for fast lookup
-    // ------------------------------------------------------
-    private final int L2_CAPACITY = 100_000;
+    // Single-flight per id, one loadAll for the ids this caller owns
+    private Map<String, VideoData> loadAllCoalesced(List<String> videoIds) {
+        Map<String, CompletableFuture<VideoData>> owned = new LinkedHashMap<>();
+        Map<String, CompletableFuture<VideoData>> waiting = new HashMap<>();
+        for (String videoId : videoIds) {
+            CompletableFuture<VideoData> load = new CompletableFuture<>();
+            CompletableFuture<VideoData> inFlight = inFlightLoads.putIfAbsent(videoId, load);
+            if (inFlight != null) {
+                CoalescedLoads.increment();
+                waiting.put(videoId, inFlight);
+            } else {
+                owned.put(videoId, load);
+            }
+        }
 
-    private final LinkedHashMap<String, String> L2Cache =
-            new LinkedHashMap<String, String>(16, 0.75f, true) {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
-                    return size() > L2_CAPACITY;
+        Map<String, VideoData> loaded = new HashMap<>();
+        try {
+            if (!owned.isEmpty()) {
+                long stamp = invalidationEpoch.get();
+                List<String> fromSource = new ArrayList<>();
+                for (String videoId : owned.keySet()) {
+                    VideoData dirty = dirtyVideos.get(videoId);
+                    if (dirty != null) loaded.put(videoId, dirty);
+                    else fromSource.add(videoId);
                 }
-            };
+                if (!fromSource.isEmpty()) loaded.putAll(L3Database.loadAll(fromSource));
 
-    // Simulated SSD storage mapping videoId → VideoData
-    private final Map<String, VideoData> SSDStorage = new HashMap<>();
+                for (Map.Entry<String, CompletableFuture<VideoData>> load : owned.entrySet()) {
+                    VideoData video = loaded.get(load.getKey());
+                    if (video != null) fillL2(CacheTier.segmentIndex(load.getKey()), video, stamp);
+                    load.getValue().complete(video);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (CompletableFuture<VideoData> load : owned.values()) load.completeExceptionally(e);
+            throw e;
+        } finally {
+            for (Map.Entry<String, CompletableFuture<VideoData>> load : owned.entrySet()) {
+                inFlightLoads.remove(load.getKey(), load.getValue());
+            }
+        }
 
-    // --------------------------------------------
-    // L3 Database simulation (slow)
-    // --------------------------------------------
-    private final Map<String, VideoData> L3Database = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<VideoData>> load : waiting.entrySet()) {
+            VideoData video = load.getValue().join();
+            if (video != null) loaded.put(load.getKey(), video);
+        }
+        return loaded;
+    }
 
     // ---------------------------------------------
-    // Access Count (for promotion L2 → L1)
+    // Prefetch: learn predecessor → videoId for this viewer's
+    // stream, then warm the predicted next video into L2
     // ---------------------------------------------
-    private final Map<String, Integer> accessCount = new HashMap<>();
+    private void observeForPrefetch(String viewerId, String videoId) {
+        SuccessorTable table = prefetchTable;
+        if (table == null) return;
+        learnAndPrefetch(table, viewerId == null ? null : table.advance(viewerId, videoId), videoId);
+    }
 
-    private final int PROMOTION_THRESHOLD = 5; // Move to L1 after N accesses
+    private void learnAndPrefetch(SuccessorTable table, String previous, String videoId) {
+        if (previous != null && !previous.equals(videoId)) table.learn(previous, videoId);
 
-    // ---------------------------------------------
-    // Statistics
-    // ---------------------------------------------
-    private long L1Hits = 0, L1Miss = 0;
-    private long L2Hits = 0, L2Miss = 0;
-    private long L3Hits = 0;
-    private long totalRequests = 0;
+        String next = table.predict(videoId, PREFETCH_MIN_CONFIDENCE);
+        if (next != null) prefetch(next);
+    }
+
+    private void prefetch(String videoId) {
+        int index = CacheTier.segmentIndex(videoId);
+        if (isCached(index, videoId) || inFlightLoads.containsKey(videoId)) return;
+        if (prefetchesInFlight.incrementAndGet() > MAX_PREFETCHES_IN_FLIGHT) {
+            prefetchesInFlight.decrementAndGet(); // shed load, the video is just a miss later
+            return;
+        }
+
+        PrefetchesIssued.increment();
+        prefetched.add(videoId);
+        try {
+            prefetcher.execute(() -> {
+                try {
+                    if (loadCoalesced(index, videoId) == null) prefetched.remove(videoId);
+                } catch (RuntimeException e) {
+                    prefetched.remove(videoId); // a failed prefetch is only a later miss
+                } finally {
+                    prefetchesInFlight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            prefetched.remove(videoId); // closing
+            prefetchesInFlight.decrementAndGet();
+        }
+    }
+
+    // Fresh copy in L1, L2 or on its way to L2; stale copies found here are dropped
+    private boolean isCached(int index, String videoId) {
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            if (lookup(l1, videoId) != null || pendingDemotions.containsKey(videoId)) return true;
+            return l2.containsKey(videoId) && isFresh(l2, videoId);
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
+        }
+    }
+
+    private boolean isFresh(Segment<Integer> l2, String videoId) {
+        CacheEntry<Integer> entry = l2.get(videoId);
+        if (!isStale(entry.tag, entry.stamp)) return true;
+        l2.remove(videoId);
+        SSDStorage.remove(videoId);
+        return false;
+    }
+
+    private void countPrefetchHit(String videoId) {
+        if (!prefetched.isEmpty() && prefetched.remove(videoId)) PrefetchHits.increment();
+    }
+
+    private VideoData loadCoalesced(int index, String videoId) {
+        CompletableFuture<VideoData> load = new CompletableFuture<>();
+        CompletableFuture<VideoData> inFlight = inFlightLoads.putIfAbsent(videoId, load);
+        if (inFlight != null) {
+            CoalescedLoads.increment();
+            return inFlight.join();
+        }
+
+        try {
+            // Stamp before reading: an invalidation racing with the load makes the fill stale
+            long stamp = invalidationEpoch.get();
+
+            // A write-behind version not flushed yet is newer than the database row
+            VideoData video = dirtyVideos.get(videoId);
+            if (video == null) video = L3Database.load(videoId);
+
+            if (video != null) fillL2(index, video, stamp); // read-through fill
+            load.complete(video);
+            return video;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(videoId, load);
+        }
+    }
+
+    // L1 hit path: no lock unless a stale entry has to be dropped
+    private VideoData lookup(Segment<VideoData> segment, String videoId) {
+        CacheEntry<VideoData> entry = segment.peek(videoId);
+        if (entry == null) return null;
+        if (isStale(entry.tag, entry.stamp)) {
+            segment.lock.lock();
+            try {
+                if (segment.get(videoId) == entry) segment.remove(videoId);
+            } finally {
+                segment.lock.unlock();
+            }
+            return null;
+        }
+        segment.recordRead(entry);
+        return entry.value;
+    }
+
+    // L1 value for a caller: off-heap payloads are copied out, a chunk recycled mid-copy is a miss
+    private VideoData readL1(Segment<VideoData> segment, String videoId) {
+        VideoData video = lookup(segment, videoId);
+        if (!(video instanceof OffHeapVideo handle)) return video;
+        try {
+            return handle.toHeap();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private CacheEntry<VideoData> readL2(int index, String videoId) {
+        Segment<Integer> segment = L2Cache.segment(index);
+        segment.lock.lock();
+        try {
+            CacheEntry<Integer> entry = segment.get(videoId);
+            if (entry == null) return null;
+            if (isStale(entry.tag, entry.stamp)) {
+                segment.remove(videoId);
+                SSDStorage.remove(videoId);
+                return null;
+            }
 
-    private double L1Time = 0.5;  // milliseconds
-    private double L2Time = 5.0;
-    private double L3Time = 150.0;
+            VideoData video = decodedCopy(index, videoId);
+            if (video == null) {
+                byte[] bytes = SSDStorage.get(videoId);
+                if (bytes == null) return null;
+                video = VideoData.decode(videoId, unpackL2(bytes));
+                keepDecoded(index, video);
+            }
+            return new CacheEntry<>(video, entry.weight, entry.tag, entry.stamp);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
 
     // ---------------------------------------------
-    // Put initial data into L3 database
+    // L2 record packing: [byte 1][int rawLength][codec output],
+    // or [byte 0][raw] when compressing does not pay off
     // ---------------------------------------------
-    public void addToDatabase(String videoId, String content) {
-        L3Database.put(videoId, new VideoData(videoId, content));
+    private byte[] packL2(byte[] raw) {
+        PayloadCodec codec = L2Codec;
+        if (codec == null) return raw;
+
+        long start = System.nanoTime();
+        byte[] compressed = codec.compress(raw);
+        CompressNanos.add(System.nanoTime() - start);
+        Compressions.increment();
+
+        byte[] packed = compressed.length + 4 < raw.length
+                ? ByteBuffer.allocate(5 + compressed.length).put((byte) 1).putInt(raw.length).put(compressed).array()
+                : ByteBuffer.allocate(1 + raw.length).put((byte) 0).put(raw).array();
+        L2RawBytes.add(raw.length);
+        L2PackedBytes.add(packed.length);
+        return packed;
+    }
+
+    private byte[] unpackL2(byte[] packed) {
+        PayloadCodec codec = L2Codec;
+        if (codec == null) return packed;
+        if (packed[0] == 0) return Arrays.copyOfRange(packed, 1, packed.length);
+
+        long start = System.nanoTime();
+        byte[] raw = codec.decompress(packed, 5, ByteBuffer.wrap(packed, 1, 4).getInt());
+        DecompressNanos.add(System.nanoTime() - start);
+        Decompressions.increment();
+        return raw;
+    }
+
+    // Caller holds the L2 segment lock
+    private VideoData decodedCopy(int index, String videoId) {
+        List<LinkedHashMap<String, VideoData>> decoded = DecodedL2;
+        if (decoded == null) return null;
+        VideoData video = decoded.get(index).get(videoId);
+        if (video != null) DecodedHits.increment();
+        return video;
+    }
+
+    private void keepDecoded(int index, VideoData video) {
+        List<LinkedHashMap<String, VideoData>> decoded = DecodedL2;
+        if (decoded == null) return;
+        LinkedHashMap<String, VideoData> workingSet = decoded.get(index);
+        workingSet.put(video.videoId, video);
+        if (workingSet.size() > decodedPerSegment) {
+            Iterator<String> eldest = workingSet.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    // Runs under the L2 segment lock whenever a record leaves L2
+    private void releaseL2(String videoId, CacheEntry<Integer> entry) {
+        List<LinkedHashMap<String, VideoData>> decoded = DecodedL2;
+        if (decoded != null) decoded.get(CacheTier.segmentIndex(videoId)).remove(videoId);
+    }
+
+    private CacheEntry<VideoData> takeFromCold(int index, String videoId) {
+        CacheTier<Integer> cold = ColdCache;
+        if (cold == null) return null;
+
+        Segment<Integer> segment = cold.segment(index);
+        segment.lock.lock();
+        try {
+            CacheEntry<Integer> entry = segment.remove(videoId);
+            if (entry == null) return null;
+
+            byte[] bytes = ColdStorage.get(videoId);
+            ColdStorage.remove(videoId);
+            if (bytes == null) return null;
+            return new CacheEntry<>(VideoData.decode(videoId, unpackL2(bytes)), entry.weight, entry.tag, entry.stamp);
+        } finally {
+            segment.lock.unlock();
+        }
     }
 
     // ---------------------------------------------
-    // Get video (L1 → L2 → L3)
+    // Demotion: L1 evictor runs under the L1 segment lock, so it
+    // only parks the entry and hands the disk write to the writer
     // ---------------------------------------------
-    public VideoData getVideo(String videoId) {
-        totalRequests++;
+    private void onL1Evict(String videoId, CacheEntry<VideoData> entry) {
+        if (!demoteOnEvict || isStale(entry.tag, entry.stamp)) return;
 
-        // L1 check
-        if (L1Cache.containsKey(videoId)) {
-            L1Hits++;
-            incrementAccess(videoId);
-            return L1Cache.get(videoId);
+        // Off-heap payloads are copied out before releaseL1 recycles the chunk
+        CacheEntry<VideoData> demoted = entry.value instanceof OffHeapVideo handle
+                ? new CacheEntry<>(handle.toHeap(), entry.weight, entry.tag, entry.stamp)
+                : entry;
+        pendingDemotions.put(videoId, demoted);
+        demotionWriter.execute(() -> demoteToL2(videoId, demoted));
+    }
+
+    // Runs under the L1 segment lock whenever an entry leaves L1
+    private void releaseL1(String videoId, CacheEntry<VideoData> entry) {
+        if (entry.value instanceof OffHeapVideo handle) {
+            OffHeapSlabs.free(handle.chunk);
         }
-        L1Miss++;
+    }
+
+    private int weighL1(VideoData video) {
+        SlabAllocator slabs = OffHeapSlabs;
+        return slabs == null ? L1Weigher.weigh(video) : slabs.chunkSizeFor(utf8Length(video.content()));
+    }
+
+    // The value L1 stores: the video itself, or a slab-backed handle (null if no chunk is free)
+    private VideoData toL1(VideoData video) {
+        SlabAllocator slabs = OffHeapSlabs;
+        if (slabs == null) return video;
 
-        // L2 check
-        if (L2Cache.containsKey(videoId)) {
-            L2Hits++;
+        byte[] bytes = video.content().getBytes(StandardCharsets.UTF_8);
+        SlabAllocator.Chunk chunk = slabs.allocate(bytes.length);
+        if (chunk == null) return null;
+        chunk.write(bytes);
+        return new OffHeapVideo(video, chunk, bytes.length);
+    }
 
-            // Read from SSD storage
-            VideoData video = SSDStorage.get(videoId);
+    private void demoteToL2(String videoId, CacheEntry<VideoData> entry) {
+        int index = CacheTier.segmentIndex(videoId);
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
 
-            // Promotion logic: promote to L1
-            incrementAccess(videoId);
-            if (accessCount.get(videoId) >= PROMOTION_THRESHOLD) {
-                promoteToL1(videoId, video);
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            // Skip if invalidated or re-promoted while waiting
+            if (pendingDemotions.remove(videoId, entry) && !l1.containsKey(videoId)
+                    && !isStale(entry.tag, entry.stamp)) {
+                putL2(l2, entry.value, entry.stamp);
+                Demotions.increment();
             }
-            return video;
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
         }
-        L2Miss++;
-
-        // L3 database check (slow)
-        if (L3Database.containsKey(videoId)) {
-            L3Hits++;
-            VideoData video = L3Database.get(videoId);
+    }
 
-            // Add to L2
-            addToL2(video);
+    // Runs under the L2 segment lock; L2 → cold keeps lock order L1 → L2 → cold
+    private void onL2Evict(String videoId, CacheEntry<Integer> entry) {
+        prefetched.remove(videoId);
+        CacheTier<Integer> cold = ColdCache;
+        boolean keep = cold != null && !isStale(entry.tag, entry.stamp);
+        byte[] bytes = keep ? SSDStorage.get(videoId) : null;
+        SSDStorage.remove(videoId);
+        if (bytes == null) return;
 
-            incrementAccess(videoId);
-            return video;
+        Segment<Integer> segment = cold.segment(CacheTier.segmentIndex(videoId));
+        segment.lock.lock();
+        try {
+            if (bytes.length <= segment.maxWeight && ColdStorage.put(videoId, bytes)) {
+                segment.put(videoId, new CacheEntry<>(bytes.length, bytes.length, entry.tag, entry.stamp));
+            }
+        } finally {
+            segment.lock.unlock();
         }
-
-        return null; // Not found anywhere
     }
 
     // ---------------------------------------------
     // Track access count
     // ---------------------------------------------
-    private void incrementAccess(String videoId) {
-        accessCount.merge(videoId, 1, Integer::sum);
+    private void recordAccess(String videoId) {
+        accessFrequency.increment(videoId);
     }
 
     // ---------------------------------------------
     // Promote to L1 (remove from L2)
+    // Both segment locks are held, always L1 before L2, so the
+    // entry is moved exactly once and never visible in both tiers
     // ---------------------------------------------
-    private void promoteToL1(String videoId, VideoData video) {
-        L2Cache.remove(videoId);
-        SSDStorage.remove(videoId);
+    private void promoteToL1(int index, CacheEntry<VideoData> candidate) {
+        VideoData video = candidate.value;
+        String videoId = video.videoId;
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
+
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            // Not the entry that was read → promoted, invalidated or replaced by a write since
+            CacheEntry<Integer> current = l2.get(videoId);
+            if (current == null || current.stamp != candidate.stamp) return;
 
-        L1Cache.put(videoId, video);
+            int weight = weighL1(video);
+            if (weight > l1.maxWeight) return; // too large for L1, keep serving it from L2
+
+            // TinyLFU admission: a full L1 only takes candidates hotter than its LRU victim;
+            // a rejected candidate leaves L1's order and referenced bits as they were
+            String victim = l1.peekEldestKey();
+            if (l1.weight + weight > l1.maxWeight && victim != null
+                    && accessFrequency.frequency(videoId) <= accessFrequency.frequency(victim)) {
+                return;
+            }
+
+            // Chunk first: nothing is evicted for a candidate that cannot be stored
+            VideoData stored = toL1(video);
+            if (stored == null) return; // no chunk in this size class, keep serving it from L2
+            l1.reserve(weight);
+
+            l2.remove(videoId);
+            SSDStorage.remove(videoId);
+            l1.put(videoId, new CacheEntry<>(stored, weight, video.tag, candidate.stamp));
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
+        }
     }
 
     // ---------------------------------------------
-    // Add item to L2 cache
+    // Move a cold hit back up into L2. The copy is taken and
+    // installed under the L1 and L2 locks that every write holds
+    // while it replaces or drops the cached copy, so a write
+    // either removed it first or replaces it after; null on a
+    // miss or a stale copy
     // ---------------------------------------------
-    private void addToL2(VideoData video) {
-        L2Cache.put(video.videoId, "ssd://" + video.videoId);
-        SSDStorage.put(video.videoId, video);
+    private CacheEntry<VideoData> moveColdToL2(int index, String videoId) {
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
+
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            CacheEntry<VideoData> entry = takeFromCold(index, videoId);
+            if (entry == null || isStale(entry.tag, entry.stamp)) return null;
+            if (!l1.containsKey(videoId) && !l2.containsKey(videoId)) {
+                putL2(l2, entry.value, entry.stamp);
+            }
+            return entry;
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
+        }
+    }
+
+    // Loader fill read at stamp: a putVideo/deleteVideo since then owns the cached copy
+    private void fillL2(int index, VideoData video, long stamp) {
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
+
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            if (!writtenSince(video.videoId, stamp) && !l1.containsKey(video.videoId)) {
+                putL2(l2, video, stamp);
+            }
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
+        }
+    }
+
+    // Caller holds the L2 segment lock; evictions triggered by put() handle their own records
+    private void putL2(Segment<Integer> l2, VideoData video, long stamp) {
+        byte[] bytes = packL2(video.encode());
+        int weight = L2Codec == null ? L2Weigher.weigh(video) : bytes.length;
+        if (weight <= l2.maxWeight && SSDStorage.put(video.videoId, bytes)) {
+            l2.put(video.videoId, new CacheEntry<>(bytes.length, weight, video.tag, stamp));
+        }
     }
 
     // ---------------------------------------------
-    // Invalidate video across all caches
+    // Invalidation (cache only, the source of record is untouched)
     // ---------------------------------------------
     public void invalidate(String videoId) {
-        L1Cache.remove(videoId);
-        L2Cache.remove(videoId);
-        SSDStorage.remove(videoId);
-        L3Database.remove(videoId);
-        accessCount.remove(videoId);
+        dropCachedCopy(CacheTier.segmentIndex(videoId), videoId);
+    }
+
+    // O(1): every cached video with this tag becomes stale, in every tier
+    public void invalidateTag(String tag) {
+        if (tag == null) throw new IllegalArgumentException("tag must not be null");
+        long epoch = invalidationEpoch.incrementAndGet();
+        tagInvalidatedAt.computeIfAbsent(tag, t -> new AtomicLong()).accumulateAndGet(epoch, Math::max);
+    }
+
+    // O(1): the whole cache namespace becomes stale
+    public void invalidateAll() {
+        allInvalidatedAt = invalidationEpoch.incrementAndGet();
+    }
+
+    // ---------------------------------------------
+    // Delete from the source of record (and the cache)
+    // ---------------------------------------------
+    public void deleteVideo(String videoId) {
+        recordWrite(videoId);
+        dirtyVideos.remove(videoId);
+        L3Database.delete(videoId);
+        invalidate(videoId);
+    }
+
+    private boolean isStale(String tag, long stamp) {
+        long cutoff = allInvalidatedAt;
+        if (tag != null) {
+            AtomicLong tagCutoff = tagInvalidatedAt.get(tag);
+            if (tagCutoff != null) cutoff = Math.max(cutoff, tagCutoff.get());
+        }
+        return stamp < cutoff;
+    }
+
+    private void dropCachedCopy(int index, String videoId) {
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
+
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            l1.remove(videoId);
+            pendingDemotions.remove(videoId);
+            if (l2.remove(videoId) != null) SSDStorage.remove(videoId);
+            takeFromCold(index, videoId);
+            prefetched.remove(videoId);
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
+        }
+    }
+
+    // New version stays in whichever tier held the old one (L2 if none)
+    private void replaceCachedCopy(int index, VideoData video) {
+        Segment<VideoData> l1 = L1Cache.segment(index);
+        Segment<Integer> l2 = L2Cache.segment(index);
+        long stamp = invalidationEpoch.get();
+
+        l1.lock.lock();
+        l2.lock.lock();
+        try {
+            pendingDemotions.remove(video.videoId);
+            takeFromCold(index, video.videoId);
+
+            int weight = weighL1(video);
+            VideoData stored = null;
+            if (l1.containsKey(video.videoId) && weight <= l1.maxWeight) {
+                stored = toL1(video); // put() below frees the old chunk and makes room
+            }
+            if (stored != null) {
+                l1.put(video.videoId, new CacheEntry<>(stored, weight, video.tag, stamp));
+            } else {
+                l1.remove(video.videoId);
+                if (l2.remove(video.videoId) != null) SSDStorage.remove(video.videoId);
+                putL2(l2, video, stamp);
+            }
+        } finally {
+            l2.lock.unlock();
+            l1.lock.unlock();
+        }
     }
 
     // ---------------------------------------------
-    // Dashboard statistics
+    // Dashboard statistics: immutable snapshot of the counters
+    // and latency histograms, cheap enough to poll
     // ---------------------------------------------
-    public void getStatistics() {
-        System.out.println("\n========== CACHE STATISTICS ==========");
+    public static final class TierStatistics {
+        public final String tier;
+        public final long hits;
+        public final long misses;
+        public final LatencyHistogram.Summary latency;  // time spent in this tier per access
+
+        TierStatistics(String tier, long hits, long misses, LatencyHistogram.Summary latency) {
+            this.tier = tier;
+            this.hits = hits;
+            this.misses = misses;
+            this.latency = latency;
+        }
+
+        // Share of the accesses reaching this tier that it served
+        public double hitRatio() {
+            long accesses = hits + misses;
+            return accesses == 0 ? 0 : (double) hits / accesses;
+        }
+    }
+
+    public static final class CacheStatistics {
+        public final long requests;
+        public final List<TierStatistics> tiers;
+        public final LatencyHistogram.Summary response;  // end to end, per getVideo call
+        public final long demotions;
+        public final long coalescedLoads;
+        public final long prefetchesIssued;
+        public final long prefetchHits;  // prefetched videos later requested from L2
+        public final long l1WeightBytes;
+        public final long l2WeightBytes;
+        public final int l2Records;
+        public final int l2Segments;
+        public final long l2BytesWritten;
+        public final long l2BytesRead;
+        public final long l2SegmentsCompacted;
+        public final String l2Codec;                // "none" unless L2 compression is enabled
+        public final double l2CompressionRatio;     // raw bytes / packed bytes
+        public final double l2CompressMeanNanos;
+        public final double l2DecompressMeanNanos;
+        public final long l2DecodedHits;            // L2 reads served by the decoded working set
+        public final long l1OffHeapReservedBytes;  // 0 unless the off-heap L1 is enabled
+        public final long l1OffHeapInUseBytes;
+
+        CacheStatistics(long requests, List<TierStatistics> tiers, LatencyHistogram.Summary response,
+                        long demotions, long coalescedLoads, long prefetchesIssued, long prefetchHits,
+                        long l1WeightBytes, long l2WeightBytes,
+                        VideoDiskStore disk, SlabAllocator slabs, PayloadCodec codec,
+                        long rawBytes, long packedBytes, long compressions, long compressNanos,
+                        long decompressions, long decompressNanos, long decodedHits) {
+            this.requests = requests;
+            this.tiers = List.copyOf(tiers);
+            this.response = response;
+            this.demotions = demotions;
+            this.coalescedLoads = coalescedLoads;
+            this.prefetchesIssued = prefetchesIssued;
+            this.prefetchHits = prefetchHits;
+            this.l1WeightBytes = l1WeightBytes;
+            this.l2WeightBytes = l2WeightBytes;
+            this.l2Records = disk.size();
+            this.l2Segments = disk.segmentCount();
+            this.l2BytesWritten = disk.bytesWritten();
+            this.l2BytesRead = disk.bytesRead();
+            this.l2SegmentsCompacted = disk.segmentsCompacted();
+            this.l2Codec = codec == null ? "none" : codec.name();
+            this.l2CompressionRatio = packedBytes == 0 ? 1 : (double) rawBytes / packedBytes;
+            this.l2CompressMeanNanos = compressions == 0 ? 0 : (double) compressNanos / compressions;
+            this.l2DecompressMeanNanos = decompressions == 0 ? 0 : (double) decompressNanos / decompressions;
+            this.l2DecodedHits = decodedHits;
+            this.l1OffHeapReservedBytes = slabs == null ? 0 : slabs.reservedBytes();
+            this.l1OffHeapInUseBytes = slabs == null ? 0 : slabs.bytesInUse();
+        }
+
+        public TierStatistics tier(String name) {
+            for (TierStatistics tier : tiers) {
+                if (tier.tier.equals(name)) return tier;
+            }
+            return null;
+        }
+
+        // Requests answered without reaching L3
+        public double cacheHitRatio() {
+            long served = 0;
+            for (TierStatistics tier : tiers) {
+                if (!tier.tier.equals("L3")) served += tier.hits;
+            }
+            return requests == 0 ? 0 : (double) served / requests;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder("\n========== CACHE STATISTICS ==========\n");
+            for (TierStatistics tier : tiers) {
+                out.append(String.format("%-4s Hit Ratio %5.1f%% (%d/%d), %s%n", tier.tier + ":",
+                        tier.hitRatio() * 100, tier.hits, tier.hits + tier.misses, tier.latency));
+            }
+            out.append(String.format("Overall: Cache Hit Ratio %.1f%% of %d requests, response %s%n",
+                    cacheHitRatio() * 100, requests, response));
+            out.append(String.format("L1 to L2 demotions: %d, L3 misses coalesced onto an in-flight load: %d%n",
+                    demotions, coalescedLoads));
+            if (prefetchesIssued > 0) {
+                out.append(String.format("Prefetches: %d issued, %d later requested%n", prefetchesIssued, prefetchHits));
+            }
+            out.append(String.format("L1 weight: %,d bytes, L2 weight: %,d bytes%n", l1WeightBytes, l2WeightBytes));
+            out.append(String.format("L2 disk: %d records in %d segment files, %d KB written, %d KB read, %d segments compacted%n",
+                    l2Records, l2Segments, l2BytesWritten / 1024, l2BytesRead / 1024, l2SegmentsCompacted));
+            if (!l2Codec.equals("none")) {
+                out.append(String.format("L2 codec %s: ratio %.2fx, compress %s, decompress %s, %d reads from the decoded set%n",
+                        l2Codec, l2CompressionRatio, LatencyHistogram.Summary.format(l2CompressMeanNanos),
+                        LatencyHistogram.Summary.format(l2DecompressMeanNanos), l2DecodedHits));
+            }
+            if (l1OffHeapReservedBytes > 0) {
+                out.append(String.format("L1 off-heap: %,d bytes in chunks of %,d bytes reserved%n",
+                        l1OffHeapInUseBytes, l1OffHeapReservedBytes));
+            }
+            return out.append("======================================\n").toString();
+        }
+    }
 
-        double L1HitRate = (L1Hits * 100.0) / Math.max(1, totalRequests);
-        double L2HitRate = (L2Hits * 100.0) / Math.max(1, totalRequests);
-        double L3HitRate = (L3Hits * 100.0) / Math.max(1, totalRequests);
+    public CacheStatistics getStatistics() {
+        List<TierStatistics> tiers = new ArrayList<>();
+        tiers.add(new TierStatistics("L1", L1Hits.sum(), L1Miss.sum(), L1Latency.summary()));
+        tiers.add(new TierStatistics("L2", L2Hits.sum(), L2Miss.sum(), L2Latency.summary()));
+        if (ColdCache != null) {
+            tiers.add(new TierStatistics("Cold", ColdHits.sum(), ColdMiss.sum(), ColdLatency.summary()));
+        }
+        tiers.add(new TierStatistics("L3", L3Hits.sum(), L3Miss.sum(), L3Latency.summary()));
+
+        return new CacheStatistics(totalRequests.sum(), tiers, ResponseLatency.summary(),
+                Demotions.sum(), CoalescedLoads.sum(), PrefetchesIssued.sum(), PrefetchHits.sum(), getL1Weight(), getL2Weight(), SSDStorage, OffHeapSlabs, L2Codec,
+                L2RawBytes.sum(), L2PackedBytes.sum(), Compressions.sum(), CompressNanos.sum(),
+                Decompressions.sum(), DecompressNanos.sum(), DecodedHits.sum());
+    }
 
-        double avgTime = (L1Hits * L1Time + L2Hits * L2Time + L3Hits * L3Time)
-                / Math.max(1, totalRequests);
+    // ---------------------------------------------
+    // Current bytes charged against each tier's budget
+    // ---------------------------------------------
+    public long getL1Weight() {
+        return L1Cache.weight();
+    }
 
-        System.out.printf("L1: Hit Rate %.1f%%, Avg Time: %.2f ms\n", L1HitRate, L1Time);
-        System.out.printf("L2: Hit Rate %.1f%%, Avg Time: %.2f ms\n", L2HitRate, L2Time);
-        System.out.printf("L3: Hit Rate %.1f%%, Avg Time: %.2f ms\n", L3HitRate, L3Time);
-        System.out.printf("Overall: Hit Rate %.1f%%, Average Response Time: %.2f ms\n",
-                (L1HitRate + L2HitRate + L3HitRate), avgTime);
+    public long getL2Weight() {
+        return L2Cache.weight();
+    }
 
-        System.out.println("======================================\n");
+    // ---------------------------------------------
+    // Finish queued demotions, then release the segment files
+    // ---------------------------------------------
+    @Override
+    public void close() {
+        writeBehindFlusher.shutdown();
+        try {
+            writeBehindFlusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushWrites();
+        prefetcher.shutdown();
+        try {
+            prefetcher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        demotionWriter.shutdown();
+        try {
+            demotionWriter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        SSDStorage.close();
+        if (ColdStorage != null) ColdStorage.close();
     }
 
     // ---------------------------------------------
     // DEMO
     // ---------------------------------------------
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
         MultiLevelCacheSystem cache = new MultiLevelCacheSystem();
 
         // Populate L3 (database)
@@ -196,14 +1892,357 @@ public class MultiLevelCacheSystem {
         cache.getVideo("video_123");  // L1 miss → L2 miss → L3 hit → add to L2
 
         System.out.println("\nRequest #2: video_123");
-        cache.getVideo("video_123");  // L2 hit → maybe promote to L1
+        cache.getVideo("video_123");  // L2 hit → promoted to L1 (TinyLFU admission only applies to a full L1)
 
-        // Cause more accesses to promote to L1
+        // Served from L1 from now on
         for (int i = 0; i < 5; i++) cache.getVideo("video_123");
 
         System.out.println("\nRequest: video_999");
         cache.getVideo("video_999");  // L1 miss → L2 miss → L3 hit
 
-        cache.getStatistics();
+        System.out.println(cache.getStatistics());
+
+        cache.close();
+
+        // Shared instance: many request threads hammering the same hot set.
+        // Small 256 KB segments so promotions leave dead segments for the compactor.
+        cache = new MultiLevelCacheSystem(VideoDiskStore.createTemp("video-l2-", 256 * 1024, 50));
+        for (int i = 0; i < 2_000; i++) cache.addToDatabase("video_" + i, "Video content " + i + " " + "x".repeat(1_000));
+
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            MultiLevelCacheSystem shared = cache;
+            pool.execute(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 100_000; i++) {
+                    shared.getVideo("video_" + random.nextInt(2_000));
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        int duplicated = 0;
+        for (int i = 0; i < CacheTier.SEGMENTS; i++) {
+            for (String id : cache.L1Cache.segment(i).map.keySet()) {
+                if (cache.L2Cache.segment(i).map.containsKey(id)) duplicated++;
+            }
+        }
+        System.out.println("Concurrent run with " + threads + " threads: L1 size " + cache.L1Cache.size()
+                + ", L2 size " + cache.L2Cache.size() + ", in both tiers: " + duplicated);
+        System.out.println(cache.getStatistics());
+        cache.close();
+
+        // Byte budgets: a 1 MB L1 holds hundreds of thumbnails but only a few large payloads
+        cache = new MultiLevelCacheSystem(VideoDiskStore.createTemp("video-l2-"),
+                1024 * 1024, HEAP_WEIGHER, 64L * 1024 * 1024, DISK_WEIGHER);
+        for (int i = 0; i < 500; i++) {
+            cache.addToDatabase("thumb_" + i, "t".repeat(200));
+            cache.addToDatabase("movie_" + i, "m".repeat(8_000));
+        }
+        for (int round = 0; round < 6; round++) {
+            for (int i = 0; i < 500; i++) {
+                cache.getVideo("thumb_" + i);
+                cache.getVideo("movie_" + i);
+            }
+        }
+        System.out.printf("Weighted tiers: L1 %d entries / %,d bytes, L2 %d entries / %,d bytes%n",
+                cache.L1Cache.size(), cache.getL1Weight(), cache.L2Cache.size(), cache.getL2Weight());
+        cache.close();
+
+        // Scan resistance: a burst of cold videos does not push the hot set out of L1
+        cache = new MultiLevelCacheSystem(VideoDiskStore.createTemp("video-l2-"),
+                256 * 1024, HEAP_WEIGHER, 64L * 1024 * 1024, DISK_WEIGHER);
+        for (int i = 0; i < 5_000; i++) cache.addToDatabase("clip_" + i, "c".repeat(500));
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) cache.getVideo("clip_" + i);     // hot set
+        }
+        for (int i = 100; i < 5_000; i++) {
+            cache.getVideo("clip_" + i);                                   // L3 → L2
+            cache.getVideo("clip_" + i);                                   // L2 hit, asks for L1
+        }
+        int hotInL1 = 0;
+        for (int i = 0; i < 100; i++) {
+            String id = "clip_" + i;
+            Segment<VideoData> segment = cache.L1Cache.segment(CacheTier.segmentIndex(id));
+            if (segment.containsKey(id)) hotInL1++;
+        }
+        System.out.println("Hot videos still in L1 after a 4,900-video scan: " + hotInL1 + "/100");
+        cache.close();
+
+        // Trace replay: same Zipf trace with L1 evictions dropped vs demoted (plus cold tier)
+        int[] trace = zipfTrace(200_000, 20_000, 0.9, 42);
+        for (int mode = 0; mode < 3; mode++) {
+            cache = new MultiLevelCacheSystem(VideoDiskStore.createTemp("video-l2-"),
+                    512 * 1024, HEAP_WEIGHER, 2L * 1024 * 1024, DISK_WEIGHER);
+            cache.setDemoteOnEvict(mode > 0);
+            if (mode == 2) cache.enableColdTier(VideoDiskStore.createTemp("video-cold-"), 8L * 1024 * 1024);
+            for (int i = 0; i < 20_000; i++) cache.addToDatabase("ep_" + i, "e".repeat(400));
+
+            for (int id : trace) cache.getVideo("ep_" + id);
+
+            CacheStatistics stats = cache.getStatistics();
+            System.out.printf("%-22s cache hit rate %.1f%%, L3 reads %d, response %s%n",
+                    mode == 0 ? "drop on evict:" : mode == 1 ? "demote L1 to L2:" : "demote + cold tier:",
+                    stats.cacheHitRatio() * 100, stats.tier("L3").hits, stats.response);
+            cache.close();
+        }
+
+        hotKeyReadDemo();
+        coalescingDemo();
+        tagInvalidationDemo();
+        offHeapDemo();
+        batchAndPrefetchDemo();
+        compressionDemo();
+    }
+
+    // Hot-key L1 hits from 1..8 threads: the lock-free hit path vs taking the segment lock per hit
+    static void hotKeyReadDemo() throws InterruptedException {
+        MultiLevelCacheSystem cache = new MultiLevelCacheSystem();
+        String[] hot = new String[16];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = "hot_" + i;
+            cache.addToDatabase(hot[i], "Trending " + i);
+            for (int k = 0; k < 3; k++) cache.getVideo(hot[i]); // L3 → L2 → L1
+        }
+
+        System.out.printf("Hot-key L1 hits (%d cores):%n", Runtime.getRuntime().availableProcessors());
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            double lockFree = hitsPerSecond(threads, 4_000_000, id -> {
+                cache.lookup(cache.L1Cache.segment(CacheTier.segmentIndex(id)), id);
+            });
+            double locked = hitsPerSecond(threads, 4_000_000, id -> {
+                Segment<VideoData> segment = cache.L1Cache.segment(CacheTier.segmentIndex(id));
+                segment.lock.lock();
+                try {
+                    segment.get(id);
+                } finally {
+                    segment.lock.unlock();
+                }
+            });
+            System.out.printf("  %d thread(s): lock-free %.1f M/s, segment lock per hit %.1f M/s%n",
+                    threads, lockFree / 1e6, locked / 1e6);
+        }
+        cache.close();
+    }
+
+    private static double hitsPerSecond(int threads, int totalHits, java.util.function.Consumer<String> hit)
+            throws InterruptedException {
+        String[] hot = new String[16];
+        for (int i = 0; i < hot.length; i++) hot[i] = "hot_" + i;
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < totalHits / threads; i++) hit.accept(hot[i & (hot.length - 1)]);
+            }));
+        }
+        for (Thread worker : workers) worker.join();
+        return totalHits / ((System.nanoTime() - start) / 1e9);
+    }
+
+    // Viral video: many concurrent misses, one database load
+    static void coalescingDemo() throws InterruptedException {
+        SimulatedVideoDatabase database = new SimulatedVideoDatabase(150);
+        MultiLevelCacheSystem cache = new MultiLevelCacheSystem(database, VideoDiskStore.createTemp("video-l2-"),
+                DEFAULT_L1_MAX_BYTES, HEAP_WEIGHER, DEFAULT_L2_MAX_BYTES, DISK_WEIGHER);
+        cache.addToDatabase("viral_1", "Everyone is watching this");
+
+        ExecutorService pool = Executors.newFixedThreadPool(50);
+        for (int i = 0; i < 50; i++) pool.execute(() -> cache.getVideo("viral_1"));
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.println("50 concurrent misses -> database loads: " + database.loads.sum());
+
+        // Write-behind: the cache sees the new version at once, the database a bit later
+        cache.setWriteMode(WriteMode.WRITE_BEHIND);
+        for (int version = 1; version <= 10; version++) cache.putVideo("viral_1", "Re-encoded v" + version);
+        System.out.println("Cached after 10 writes: " + cache.getVideo("viral_1").content()
+                + ", database stores so far: " + database.stores.sum());
+        Thread.sleep(300);
+        System.out.println("Database stores after flush: " + database.stores.sum()
+                + " (10 writes coalesced)");
+        cache.close();
+    }
+
+    // Channel re-encode: one call makes the whole channel stale, other channels keep hitting
+    static void tagInvalidationDemo() {
+        SimulatedVideoDatabase database = new SimulatedVideoDatabase(0);
+        MultiLevelCacheSystem cache = new MultiLevelCacheSystem(database, VideoDiskStore.createTemp("video-l2-"),
+                DEFAULT_L1_MAX_BYTES, HEAP_WEIGHER, DEFAULT_L2_MAX_BYTES, DISK_WEIGHER);
+        for (int i = 0; i < 5_000; i++) {
+            cache.addToDatabase("cooking_" + i, "Cooking episode " + i, "channel:cooking");
+            cache.addToDatabase("travel_" + i, "Travel episode " + i, "channel:travel");
+        }
+        for (int i = 0; i < 5_000; i++) {
+            cache.getVideo("cooking_" + i);
+            cache.getVideo("travel_" + i);
+        }
+
+        long start = System.nanoTime();
+        cache.invalidateTag("channel:cooking");
+        long nanos = System.nanoTime() - start;
+
+        long loadsBefore = database.loads.sum();
+        for (int i = 0; i < 5_000; i++) cache.getVideo("cooking_" + i);
+        long cookingReloads = database.loads.sum() - loadsBefore;
+
+        loadsBefore = database.loads.sum();
+        for (int i = 0; i < 5_000; i++) cache.getVideo("travel_" + i);
+        long travelReloads = database.loads.sum() - loadsBefore;
+
+        System.out.printf("invalidateTag(channel:cooking) took %d us; reloads: cooking %d/5000, travel %d/5000%n",
+                nanos / 1000, cookingReloads, travelReloads);
+
+        // invalidate() is cache-only, deleteVideo() removes the source of record too
+        cache.invalidate("travel_0");
+        System.out.println("After invalidate: travel_0 " + (cache.getVideo("travel_0") != null ? "reloaded" : "gone"));
+        cache.deleteVideo("travel_0");
+        System.out.println("After deleteVideo: travel_0 " + (cache.getVideo("travel_0") != null ? "reloaded" : "gone"));
+        cache.close();
+    }
+
+    // 10,000 hot 8 KB videos held in L1: live heap and full GC pause, on-heap vs off-heap
+    static void offHeapDemo() {
+        // Payloads are generated on load so the source itself holds nothing on the heap
+        VideoLoader generated = new VideoLoader() {
+            public VideoData load(String videoId) {
+                return new VideoData(videoId, videoId + ":" + "p".repeat(8_000));
+            }
+
+            public void store(VideoData video) {
+            }
+
+            public void delete(String videoId) {
+            }
+        };
+
+        for (int mode = 0; mode < 2; mode++) {
+            MultiLevelCacheSystem cache = new MultiLevelCacheSystem(generated, VideoDiskStore.createTemp("video-l2-"),
+                    512L * 1024 * 1024, HEAP_WEIGHER, DEFAULT_L2_MAX_BYTES, DISK_WEIGHER);
+            if (mode == 1) cache.enableOffHeapL1();
+
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < 10_000; i++) cache.getVideo("hot_" + i);  // L3 → L2, then L2 → L1
+            }
+
+            long[] pauses = new long[5];
+            for (int i = 0; i < pauses.length; i++) {
+                long start = System.nanoTime();
+                System.gc();
+                pauses[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(pauses);
+            long liveHeap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+            // Bytes a hit allocates: getVideo copies an off-heap payload, readVideo reads it in place
+            // (a heap payload has no bytes to view, readVideo encodes it)
+            long[] checksum = new long[1];
+            long copyBytes = allocatedPerRead(() -> checksum[0] += cache.getVideo("hot_7").content().charAt(0));
+            long viewBytes = allocatedPerRead(() -> checksum[0] += cache.readVideo("hot_7", payload -> payload.get(0)));
+
+            System.out.printf("%-12s L1 %,d entries, live heap %,d MB, full GC pause median %.1f ms, max %.1f ms, "
+                            + "allocated per hit: getVideo %,d B, readVideo %,d B%n",
+                    mode == 0 ? "heap L1:" : "off-heap L1:", cache.L1Cache.size(), liveHeap >> 20,
+                    pauses[pauses.length / 2] / 1e6, pauses[pauses.length - 1] / 1e6, copyBytes, viewBytes);
+            cache.close();
+        }
+    }
+
+    // Mean bytes the current thread allocates per call of read, -1 if the JVM cannot tell
+    private static long allocatedPerRead(Runnable read) {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean allocations)) return -1;
+        for (int i = 0; i < 10_000; i++) read.run(); // warm up
+        long before = allocations.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) read.run();
+        return (allocations.getCurrentThreadAllocatedBytes() - before) / 10_000;
+    }
+
+    // Playlist page as one batch, then viewers binge a series with the prefetcher on
+    static void batchAndPrefetchDemo() throws InterruptedException {
+        SimulatedVideoDatabase database = new SimulatedVideoDatabase(20);
+        MultiLevelCacheSystem cache = new MultiLevelCacheSystem(database, VideoDiskStore.createTemp("video-l2-"),
+                DEFAULT_L1_MAX_BYTES, HEAP_WEIGHER, DEFAULT_L2_MAX_BYTES, DISK_WEIGHER);
+        List<String> playlist = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            cache.addToDatabase("track_" + i, "Playlist track " + i);
+            playlist.add("track_" + i);
+        }
+
+        long start = System.nanoTime();
+        List<VideoData> page = cache.getVideos(playlist);
+        System.out.printf("getVideos(30 cold ids): %d found, %d database round trip(s), %.0f ms%n",
+                page.stream().filter(Objects::nonNull).count(), database.loads.sum(), (System.nanoTime() - start) / 1e6);
+
+        cache.enablePrefetch();
+        for (int ep = 1; ep <= 10; ep++) cache.addToDatabase("series_ep" + ep, "Episode " + ep);
+        for (int viewer = 1; viewer <= 3; viewer++) {
+            long missesBefore = cache.L3Hits.sum();
+            for (int ep = 1; ep <= 10; ep++) {
+                cache.getVideo("series_ep" + ep, "viewer-" + viewer);
+                Thread.sleep(50);  // watching; the prefetch lands meanwhile
+            }
+            System.out.printf("Viewer %d binge of 10 episodes: %d went to the database%n",
+                    viewer, cache.L3Hits.sum() - missesBefore);
+            cache.invalidateAll();  // next viewer finds only what the prefetcher warms
+        }
+        System.out.println(cache.getStatistics());
+        cache.close();
+    }
+
+    // Same Zipf trace over compressible metadata with a small L2, per codec
+    static void compressionDemo() {
+        String[] words = {"episode", "season", "cooking", "travel", "review", "highlights", "live",
+                "interview", "behind", "the", "scenes", "trailer", "official", "recap", "guide"};
+        int[] trace = zipfTrace(200_000, 20_000, 0.9, 11);
+        PayloadCodec[] codecs = {null, PayloadCodec.lz(), PayloadCodec.deflate(1), PayloadCodec.deflate(6),
+                PayloadCodec.deflate(9)};
+
+        double baseline = 0;
+        for (PayloadCodec codec : codecs) {
+            MultiLevelCacheSystem cache = new MultiLevelCacheSystem(VideoDiskStore.createTemp("video-l2-"),
+                    256 * 1024, HEAP_WEIGHER, 4L * 1024 * 1024, DISK_WEIGHER);
+            if (codec != null) cache.enableL2Compression(codec, 1_024);
+            for (int i = 0; i < 20_000; i++) {
+                Random random = new Random(i);
+                StringBuilder json = new StringBuilder("{\"id\":\"meta_" + i + "\",\"title\":\"");
+                for (int w = 0; w < 8; w++) json.append(words[random.nextInt(words.length)]).append(' ');
+                json.append("\",\"description\":\"");
+                for (int w = 0; w < 120; w++) json.append(words[random.nextInt(words.length)]).append(' ');
+                json.append("\",\"views\":").append(random.nextInt(1_000_000)).append('}');
+                cache.addToDatabase("meta_" + i, json.toString());
+            }
+
+            for (int id : trace) cache.getVideo("meta_" + id);
+
+            CacheStatistics stats = cache.getStatistics();
+            double hitRatio = stats.cacheHitRatio() * 100;
+            if (codec == null) baseline = hitRatio;
+            System.out.printf("L2 %-10s hit %5.1f%% (%+5.1f), L2 entries %5d, ratio %.2fx, compress %s, decompress %s%n",
+                    stats.l2Codec + ":", hitRatio, hitRatio - baseline, cache.L2Cache.size(), stats.l2CompressionRatio,
+                    LatencyHistogram.Summary.format(stats.l2CompressMeanNanos), LatencyHistogram.Summary.format(stats.l2DecompressMeanNanos));
+            cache.close();
+        }
+    }
+
+    // Video ids drawn from a Zipf(s) popularity distribution
+    static int[] zipfTrace(int length, int videos, double s, long seed) {
+        double[] cdf = new double[videos];
+        double sum = 0;
+        for (int i = 0; i < videos; i++) {
+            sum += 1.0 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+
+        Random random = new Random(seed);
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int pick = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i] = pick >= 0 ? pick : Math.min(videos - 1, -pick - 1);
+        }
+        return trace;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,232 @@
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Behaviour checks for ParkingNetwork's lock-free free-spot index: the
+ * AtomicSpotBitmap against a TreeSet model at sizes that cross every word and
+ * level boundary, and concurrent claims and releases from several threads.
+ * Also checks that a failing ExitLedger neither loses records nor lets an
+ * exit through unbilled. Each check throws IllegalStateException on the first violation; a clean run
+ * prints one "ok" line per check.
+ *
+ * Usage: java ParkingChecks
+ */
+public class ParkingChecks {
+
+    private static final int[] SIZES = {
+        1, 2, 63, 64, 65, 4_095, 4_096, 4_097, 262_143, 262_144, 262_145, 300_000
+    };
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new IllegalStateException(message);
+    }
+
+    // --- Single thread: every query agrees with a TreeSet of the free spots ---
+    private static void bitmapMatchesTreeSet(int size, long seed) {
+        Random random = new Random(seed);
+        ParkingNetwork.AtomicSpotBitmap bitmap = new ParkingNetwork.AtomicSpotBitmap(size, new LongAdder());
+        TreeSet<Integer> free = new TreeSet<>();
+        String where = "size " + size + ": ";
+
+        // Everything free, then random toggles around half full
+        for (int spot = 0; spot < size; spot++) {
+            bitmap.release(spot);
+            free.add(spot);
+        }
+        int operations = Math.min(200_000, size * 20);
+        for (int i = 0; i < operations; i++) {
+            int spot = random.nextInt(size);
+            if (free.remove(spot)) {
+                check(bitmap.tryClaim(spot), where + "free spot " + spot + " not claimable");
+            } else {
+                check(!bitmap.tryClaim(spot), where + "taken spot " + spot + " claimed");
+                bitmap.release(spot);
+                free.add(spot);
+            }
+            if (i % 4 == 0) compareQueries(bitmap, free, random.nextInt(size), where);
+        }
+        compareAll(bitmap, free, where);
+
+        // Drain through claimNearest: the emptying words must clear every hint level
+        while (!free.isEmpty()) {
+            int position = random.nextInt(size);
+            Integer expected = nearest(free, position);
+            int claimed = bitmap.claimNearest(position);
+            check(claimed == expected, where + "claimNearest(" + position + ") = " + claimed + ", expected " + expected);
+            free.remove(expected);
+        }
+        check(bitmap.claimNearest(random.nextInt(size)) == -1, where + "claimed from an empty index");
+        check(bitmap.next(0) == -1 && bitmap.previous(size - 1) == -1, where + "empty index still finds a spot");
+
+        // Sparse: a few releases into the empty index, found from anywhere
+        for (int i = 0; i < Math.min(size, 200); i++) {
+            int spot = random.nextInt(size);
+            if (free.add(spot)) bitmap.release(spot);
+            compareQueries(bitmap, free, random.nextInt(size), where);
+        }
+        compareAll(bitmap, free, where);
+
+        int taken = free.first();
+        bitmap.tryClaim(taken);
+        free.remove(taken);
+        int again = free.isEmpty() ? -1 : free.first();
+        if (again >= 0) {
+            boolean rejected = false;
+            try {
+                bitmap.release(again);
+            } catch (IllegalStateException e) {
+                rejected = true;
+            }
+            check(rejected, where + "double release of spot " + again + " accepted");
+        }
+    }
+
+    private static void compareQueries(ParkingNetwork.AtomicSpotBitmap bitmap, TreeSet<Integer> free, int position,
+                                       String where) {
+        Integer ceiling = free.ceiling(position);
+        Integer floor = free.floor(position);
+        check(bitmap.next(position) == (ceiling == null ? -1 : ceiling), where + "next(" + position + ")");
+        check(bitmap.previous(position) == (floor == null ? -1 : floor), where + "previous(" + position + ")");
+        check(bitmap.nearest(position) == nearest(free, position), where + "nearest(" + position + ")");
+        check(bitmap.isFree(position) == free.contains(position), where + "isFree(" + position + ")");
+    }
+
+    // Free spots found by walking next() are exactly the model's
+    private static void compareAll(ParkingNetwork.AtomicSpotBitmap bitmap, TreeSet<Integer> free, String where) {
+        int count = 0;
+        for (int spot = bitmap.next(0); spot >= 0; spot = bitmap.next(spot + 1)) {
+            check(free.contains(spot), where + "walk found taken spot " + spot);
+            count++;
+        }
+        check(count == free.size(), where + "walk found " + count + " of " + free.size() + " free spots");
+    }
+
+    // Closest free spot, ties going up; -1 if none
+    private static int nearest(TreeSet<Integer> free, int position) {
+        Integer above = free.ceiling(position);
+        Integer below = position > 0 ? free.floor(position - 1) : null;
+        if (below == null) return above == null ? -1 : above;
+        if (above == null) return below;
+        return above - position <= position - below ? above : below;
+    }
+
+    // --- Threads claiming and releasing at once: no spot has two owners, none is lost ---
+    private static void concurrentClaimsNeverCollide() throws InterruptedException {
+        int size = 10_000;
+        int threads = 4;
+        ParkingNetwork.AtomicSpotBitmap bitmap = new ParkingNetwork.AtomicSpotBitmap(size, new LongAdder());
+        for (int spot = 0; spot < size; spot++) bitmap.release(spot);
+
+        AtomicIntegerArray owner = new AtomicIntegerArray(size);
+        List<String> failures = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 1; t <= threads; t++) {
+            int id = t;
+            workers.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Integer> held = new ArrayList<>();
+                awaitQuietly(start);
+                for (int i = 0; i < 300_000; i++) {
+                    // Hold up to 3,000 spots each, so the index runs from full to nearly empty
+                    if (held.size() < 3_000 && random.nextInt(10) < 6) {
+                        int position = random.nextInt(size);
+                        int spot = random.nextBoolean()
+                                ? bitmap.claimNearest(position)
+                                : bitmap.tryClaim(position) ? position : -1;
+                        if (spot < 0) continue;
+                        if (!owner.compareAndSet(spot, 0, id)) failures.add("spot " + spot + " claimed twice");
+                        held.add(spot);
+                    } else if (!held.isEmpty()) {
+                        int spot = held.remove(random.nextInt(held.size()));
+                        owner.set(spot, 0);
+                        bitmap.release(spot);
+                    }
+                }
+                for (int spot : held) {
+                    owner.set(spot, 0);
+                    bitmap.release(spot);
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        check(failures.isEmpty(), failures.isEmpty() ? "" : failures.get(0));
+
+        // Everything was released: every spot is free and reachable through the hints
+        for (int spot = 0; spot < size; spot++) check(bitmap.isFree(spot), "spot " + spot + " never released");
+        int found = 0;
+        for (int spot = bitmap.next(0); spot >= 0; spot = bitmap.next(spot + 1)) found++;
+        check(found == size, "hints lost: walk finds " + found + " of " + size + " free spots");
+    }
+
+    // --- A ledger write that fails keeps its bytes and leaves the vehicle parked ---
+    private static void failedLedgerWriteLosesNothing() throws Exception {
+        Path file = Files.createTempFile("exit-ledger-check", ".bin");
+        long[] now = {0};
+        ParkingLotSystem lot = new ParkingLotSystem(16, ParkingLotSystem.Probing.LINEAR, () -> now[0], 60);
+        try (ExitLedger ledger = new ExitLedger(file, ExitLedger.RECORD_BYTES)) { // one record per drain
+            lot.setExitLedger(ledger);
+            lot.parkVehicle("FIRST");
+            lot.parkVehicle("SECOND");
+            now[0] = 60_000;
+            lot.exitVehicle("FIRST"); // buffered
+
+            Field field = ExitLedger.class.getDeclaredField("channel");
+            field.setAccessible(true);
+            FileChannel channel = (FileChannel) field.get(ledger);
+            channel.close(); // the next drain fails
+            boolean failed = false;
+            try {
+                lot.exitVehicle("SECOND");
+            } catch (UncheckedIOException e) {
+                failed = true;
+            }
+            check(failed, "exit succeeded with a closed ledger");
+            check(lot.findVehicle("SECOND") >= 0, "failed ledger write still freed the spot");
+            check(ledger.records() == 1, "ledger counts " + ledger.records() + " records, one was written");
+
+            FileChannel reopened = FileChannel.open(file, StandardOpenOption.WRITE);
+            reopened.position(reopened.size());
+            field.set(ledger, reopened); // storage is back: the retry writes both stays
+            lot.exitVehicle("SECOND");
+            ledger.flush();
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        Files.delete(file);
+        check(bytes.capacity() == 8 + 2 * ExitLedger.RECORD_BYTES, "ledger holds " + bytes.capacity() + " bytes");
+        check(bytes.getLong(8) == ExitLedger.plateId("FIRST"), "buffered record lost by the failed write");
+        check(bytes.getLong(8 + ExitLedger.RECORD_BYTES) == ExitLedger.plateId("SECOND"), "retried exit not recorded");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int size : SIZES) bitmapMatchesTreeSet(size, 47 + size);
+        System.out.println("ok  spot bitmap matches a TreeSet model at sizes 1 to 300,000");
+        concurrentClaimsNeverCollide();
+        System.out.println("ok  concurrent claims and releases never share or lose a spot");
+        failedLedgerWriteLosesNothing();
+        System.out.println("ok  failed ledger write loses no record and bills every exit");
+    }
+}
@@ -1,8 +1,16 @@
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
 import java.util.*;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
 
 public class ParkingLotSystem {
 
-    private static final int TOTAL_SPOTS = 500;
+    private static final int DEFAULT_CAPACITY = 500;
+
+    // Tariff shared by every lot: $5.50 per hour, billed in whole cents
+    public static final long HOURLY_RATE_CENTS = 550;
 
     private enum Status { EMPTY, OCCUPIED, DELETED }
 
@@ -10,113 +18,961 @@ public class ParkingLotSystem {
         String plate;
         long entryTime;
         Status status = Status.EMPTY;
-        int probes; // number of probes needed to assign this spot
+        int probes; // position of this spot in the vehicle's probe sequence
+    }
+
+    /** Order in which a vehicle's candidate spots are tried, derived from its plate hash */
+    public interface ProbingStrategy {
+        String name();
+
+        /** i-th spot of the sequence; i = 0 is the home spot */
+        int spot(int hash, int i, int capacity);
+
+        /** One vehicle's sequence i → spot, with the per-vehicle setup done once */
+        default IntUnaryOperator sequence(int hash, int capacity) {
+            return i -> spot(hash, i, capacity);
+        }
+
+        /** Sequence positions after which no new spot turns up: a walk that finds nothing free by then never will */
+        default int reach(int capacity) {
+            return capacity;
+        }
+
+        /** Sequence is home, home + 1, home + 2, ... (wrapping) */
+        default boolean isLinear() {
+            return false;
+        }
+
+        /** An arrival may take the spot of a vehicle nearer its home, which is re-parked further on */
+        default boolean displaces() {
+            return false;
+        }
+    }
+
+    /** Built-in probing strategies */
+    public enum Probing implements ProbingStrategy {
+        LINEAR {
+            public int spot(int hash, int i, int capacity) {
+                return (home(hash, capacity) + i) % capacity;
+            }
+
+            public boolean isLinear() {
+                return true;
+            }
+        },
+        // Triangular offsets 0, 1, 3, 6, ...; only visits every spot when capacity is a power of two
+        QUADRATIC {
+            public int spot(int hash, int i, int capacity) {
+                return (int) ((home(hash, capacity) + (long) i * (i + 1) / 2) % capacity);
+            }
+
+            // Offsets repeat with period 2 * capacity whatever the home; e.g. 500 spots: 212 reached by i = 434
+            public int reach(int capacity) {
+                boolean[] seen = new boolean[capacity];
+                int reach = 0;
+                for (long i = 0; i < 2L * capacity; i++) {
+                    int offset = (int) (i * (i + 1) / 2 % capacity);
+                    if (!seen[offset]) {
+                        seen[offset] = true;
+                        reach = (int) i + 1;
+                    }
+                }
+                return reach;
+            }
+        },
+        // Second hash picks a step coprime with capacity, so the sequence visits every spot
+        DOUBLE_HASHING {
+            public int spot(int hash, int i, int capacity) {
+                return (int) ((home(hash, capacity) + (long) i * step(hash, capacity)) % capacity);
+            }
+
+            public IntUnaryOperator sequence(int hash, int capacity) {
+                int home = home(hash, capacity);
+                int step = step(hash, capacity);
+                return i -> (int) ((home + (long) i * step) % capacity);
+            }
+
+            private int step(int hash, int capacity) {
+                if (capacity == 1) return 0;
+                int step = 1 + Integer.remainderUnsigned(Integer.rotateLeft(hash, 16), capacity - 1);
+                while (gcd(step, capacity) != 1) step = step % (capacity - 1) + 1;
+                return step;
+            }
+        },
+        // Linear sequence, but an arrival displaced further than a parked vehicle takes its spot
+        ROBIN_HOOD {
+            public int spot(int hash, int i, int capacity) {
+                return (home(hash, capacity) + i) % capacity;
+            }
+
+            public boolean isLinear() {
+                return true;
+            }
+
+            public boolean displaces() {
+                return true;
+            }
+        };
+
+        static int home(int hash, int capacity) {
+            return Integer.remainderUnsigned(hash, capacity);
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+
+    /** Exact counts of probe lengths 0..capacity, for percentile queries */
+    public static class ProbeHistogram {
+        private final long[] counts;
+        private long total = 0;
+        private long sum = 0;
+
+        ProbeHistogram(int capacity) {
+            counts = new long[capacity + 1];
+        }
+
+        private ProbeHistogram(ProbeHistogram source) {
+            counts = source.counts.clone();
+            total = source.total;
+            sum = source.sum;
+        }
+
+        void record(int probes) {
+            counts[Math.min(probes, counts.length - 1)]++;
+            total++;
+            sum += probes;
+        }
+
+        public long count() {
+            return total;
+        }
+
+        public double mean() {
+            return total == 0 ? 0 : sum / (double) total;
+        }
+
+        /** Smallest probe length covering fraction q of the samples */
+        public int percentile(double q) {
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int probes = 0; probes < counts.length; probes++) {
+                seen += counts[probes];
+                if (seen >= rank) return probes;
+            }
+            return 0;
+        }
+
+        public int max() {
+            for (int probes = counts.length - 1; probes > 0; probes--) {
+                if (counts[probes] > 0) return probes;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mean %.2f, p50 %d, p90 %d, p99 %d, max %d",
+                    mean(), percentile(0.50), percentile(0.90), percentile(0.99), max());
+        }
+    }
+
+    /**
+     * Two-level bitmap of free spots (EMPTY or DELETED). Bit b of words[w] is spot
+     * w * 64 + b; bit w of summary[w / 64] is set while words[w] has any free spot,
+     * so a search skips 4096 spots per summary word and ends in two bit scans.
+     */
+    private static class FreeSpotIndex {
+        private final int size;
+        private final long[] words;
+        private final long[] summary;
+
+        FreeSpotIndex(int size) {
+            this.size = size;
+            this.words = new long[(size + 63) >>> 6];
+            this.summary = new long[(words.length + 63) >>> 6];
+            for (int spot = 0; spot < size; spot++) markFree(spot);
+        }
+
+        void markFree(int spot) {
+            int w = spot >>> 6;
+            words[w] |= 1L << spot;
+            summary[w >>> 6] |= 1L << w;
+        }
+
+        boolean isFree(int spot) {
+            return (words[spot >>> 6] & (1L << spot)) != 0;
+        }
+
+        void markTaken(int spot) {
+            int w = spot >>> 6;
+            words[w] &= ~(1L << spot);
+            if (words[w] == 0) summary[w >>> 6] &= ~(1L << w);
+        }
+
+        /** First free spot at or after from, or -1 */
+        int nextFree(int from) {
+            if (from >= size) return -1;
+            int w = from >>> 6;
+            long bits = words[w] & (-1L << from);
+            if (bits != 0) return (w << 6) + Long.numberOfTrailingZeros(bits);
+
+            w = nextNonEmptyWord(w + 1);
+            return w < 0 ? -1 : (w << 6) + Long.numberOfTrailingZeros(words[w]);
+        }
+
+        /** First free spot at or after from, wrapping around to spot 0; -1 if the lot is full */
+        int nextFreeWrapping(int from) {
+            int spot = nextFree(from);
+            return spot >= 0 || from == 0 ? spot : nextFree(0);
+        }
+
+        private int nextNonEmptyWord(int from) {
+            int s = from >>> 6;
+            if (s >= summary.length) return -1;
+            long bits = summary[s] & (-1L << from);
+            while (bits == 0) {
+                if (++s == summary.length) return -1;
+                bits = summary[s];
+            }
+            return (s << 6) + Long.numberOfTrailingZeros(bits);
+        }
+    }
+
+    /**
+     * Ring buffer of per-minute samples over a fixed retention. Minute m lives in
+     * slot m % retention while stamps[slot] == m. Occupancy is integrated over each
+     * minute in spot-milliseconds: a change at time t adds delta * (end of minute - t),
+     * so every minute reads as if the current level holds to its end, and minutes
+     * with no events carry the level through. The peak is kept separately. Recording
+     * touches only primitive arrays, so it never allocates.
+     */
+    private static class MinuteSeries {
+        private final int retention;
+        private final long[] stamps;
+        private final int[] arrivals;
+        private final int[] departures;
+        private final long[] levelMillis; // occupancy integrated over the minute
+        private final int[] peak;         // highest occupancy reached during the minute
+        private final int capacity;
+        private long latest = -1;  // newest minute written
+        private int occupancy = 0; // level at the end of the newest minute
+
+        MinuteSeries(int retentionMinutes, int capacity) {
+            this.retention = retentionMinutes;
+            this.capacity = capacity;
+            this.stamps = new long[retentionMinutes];
+            this.arrivals = new int[retentionMinutes];
+            this.departures = new int[retentionMinutes];
+            this.levelMillis = new long[retentionMinutes];
+            this.peak = new int[retentionMinutes];
+            Arrays.fill(stamps, -1);
+        }
+
+        /** Moves the buffer to minute, carrying the current occupancy through the gap */
+        void advanceTo(long minute) {
+            if (minute <= latest) return;
+            long first = latest < 0 ? minute : Math.max(latest + 1, minute - retention + 1);
+            for (long m = first; m <= minute; m++) {
+                int slot = (int) (m % retention);
+                stamps[slot] = m;
+                arrivals[slot] = 0;
+                departures[slot] = 0;
+                levelMillis[slot] = occupancy * 60_000L;
+                peak[slot] = occupancy;
+            }
+            latest = minute;
+        }
+
+        /** One arrival or departure; a clock that steps back is charged to the start of the newest minute */
+        void record(long millis, boolean arrival, int occupancyAfter) {
+            advanceTo(Math.floorDiv(millis, 60_000));
+            int slot = (int) (latest % retention);
+            if (arrival) arrivals[slot]++;
+            else departures[slot]++;
+            long at = Math.max(millis, latest * 60_000);
+            levelMillis[slot] += (long) (occupancyAfter - occupancy) * ((latest + 1) * 60_000 - at);
+            occupancy = occupancyAfter;
+            if (occupancyAfter > peak[slot]) peak[slot] = occupancyAfter;
+        }
+
+        /** Aggregates minutes [fromMinute, toMinute) still held by the buffer */
+        WindowStats window(long fromMinute, long toMinute) {
+            long[] occupancyCounts = new long[capacity + 1];
+            int minutes = 0;
+            long arrived = 0;
+            long departed = 0;
+            long occupancyMillis = 0;
+            int peakOccupancy = -1;
+            long peakMinute = -1;
+
+            long from = Math.max(fromMinute, latest - retention + 1);
+            long to = Math.min(toMinute, latest + 1);
+            for (long m = from; m < to; m++) {
+                int slot = (int) (m % retention);
+                if (stamps[slot] != m) continue; // before the first event
+                minutes++;
+                arrived += arrivals[slot];
+                departed += departures[slot];
+                occupancyMillis += levelMillis[slot];
+                occupancyCounts[(int) ((levelMillis[slot] + 30_000) / 60_000)]++; // minute's mean, rounded
+                if (peak[slot] > peakOccupancy) {
+                    peakOccupancy = peak[slot];
+                    peakMinute = m;
+                }
+            }
+            return new WindowStats(fromMinute, toMinute, minutes, arrived, departed, occupancyMillis,
+                    Math.max(0, peakOccupancy), peakMinute, occupancyCounts);
+        }
+    }
+
+    /** Arrivals, departures and per-minute occupancy over a window of the time series */
+    public static final class WindowStats {
+        public final long fromMillis;
+        public final long toMillis;
+        public final int minutes;         // minutes of the window the series still holds
+        public final long arrivals;
+        public final long departures;
+        public final double meanOccupancy; // time-weighted
+        public final int peakOccupancy;    // highest level reached
+        public final long peakMillis;     // start of the first minute at the peak, -1 if no data
+        private final long[] occupancyCounts;
+
+        WindowStats(long fromMinute, long toMinute, int minutes, long arrivals, long departures,
+                    long occupancyMillis, int peakOccupancy, long peakMinute, long[] occupancyCounts) {
+            this.fromMillis = fromMinute * 60_000;
+            this.toMillis = toMinute * 60_000;
+            this.minutes = minutes;
+            this.arrivals = arrivals;
+            this.departures = departures;
+            this.meanOccupancy = minutes == 0 ? 0 : occupancyMillis / (minutes * 60_000.0);
+            this.peakOccupancy = peakOccupancy;
+            this.peakMillis = peakMinute < 0 ? -1 : peakMinute * 60_000;
+            this.occupancyCounts = occupancyCounts;
+        }
+
+        /** Occupancy that fraction q of the window's minutes average at or below */
+        public int occupancyPercentile(double q) {
+            long rank = Math.max(1, (long) Math.ceil(q * minutes));
+            long seen = 0;
+            for (int level = 0; level < occupancyCounts.length; level++) {
+                seen += occupancyCounts[level];
+                if (seen >= rank) return level;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d min, %d in / %d out, occupancy mean %.1f, p50 %d, p95 %d, peak %d",
+                    minutes, arrivals, departures, meanOccupancy, occupancyPercentile(0.50),
+                    occupancyPercentile(0.95), peakOccupancy);
+        }
     }
 
-    private SpotEntry[] table = new SpotEntry[TOTAL_SPOTS];
+    // One lot behind one lock: every public method is synchronized. For many gates
+    // claiming spots at once across several garages, see ParkingNetwork
+    private final int capacity;
+    private final SpotEntry[] table;
+    private final ProbingStrategy strategy;
+    private final FreeSpotIndex freeSpots;
+
+    // Direct plate → spot index: exit and lookup never walk the probe sequence
+    private final Map<String, Integer> spotByPlate = new HashMap<>();
+    private final int sequenceReach; // positions of a probe sequence worth walking
+
+    // Tombstone cleanup keeps probe sequences short for hash-order walks
+    private final int sweepInterval; // tombstones created between full sweeps
+    private boolean tombstoneCleanup = true;
+    private int tombstones = 0;
+    private int tombstonesSinceSweep = 0;
 
     // Statistics
     private int currentOccupied = 0;
     private double totalProbes = 0;
+    private int lastParkProbes = 0;  // walk of the latest successful park
     private int totalParks = 0;
-    private int[] hourlyOccupancy = new int[24];
+
+    // Per-minute time series; the clock is any millisecond source, the system clock by default
+    public static final int DEFAULT_RETENTION_MINUTES = 7 * 24 * 60;
+    private final LongSupplier clock;
+    private final MinuteSeries series;
+    private final ZoneRules zoneRules; // for clock times of day, DST included
+
+    // Optional append-only record of completed stays
+    private ExitLedger exitLedger;
+    private long relocations = 0;
+    private final ProbeHistogram probeHistogram;
 
     public ParkingLotSystem() {
-        for (int i = 0; i < TOTAL_SPOTS; i++) {
+        this(DEFAULT_CAPACITY, Probing.LINEAR);
+    }
+
+    public ParkingLotSystem(ProbingStrategy strategy) {
+        this(DEFAULT_CAPACITY, strategy);
+    }
+
+    public ParkingLotSystem(int capacity, ProbingStrategy strategy) {
+        this(capacity, strategy, System::currentTimeMillis, DEFAULT_RETENTION_MINUTES);
+    }
+
+    public ParkingLotSystem(int capacity, ProbingStrategy strategy, LongSupplier clock, int retentionMinutes) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        if (retentionMinutes <= 0) throw new IllegalArgumentException("retention must be positive");
+        this.capacity = capacity;
+        this.strategy = strategy;
+        this.sequenceReach = strategy.reach(capacity);
+        this.clock = clock;
+        this.series = new MinuteSeries(retentionMinutes, capacity);
+        this.zoneRules = ZoneId.systemDefault().getRules();
+        this.table = new SpotEntry[capacity];
+        this.freeSpots = new FreeSpotIndex(capacity);
+        this.sweepInterval = Math.max(1, capacity / 8);
+        this.probeHistogram = new ProbeHistogram(capacity);
+        for (int i = 0; i < capacity; i++) {
             table[i] = new SpotEntry();
         }
     }
 
-    // Simple custom hash function for license plates
-    private int hash(String plate) {
-        return Math.abs(plate.hashCode()) % TOTAL_SPOTS;
+    // Plates that differ in one character have String hashes that differ only in
+    // the low bits; the murmur3 finalizer spreads them over the whole int
+    private static int plateHash(String plate) {
+        int h = plate.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
     }
 
-    /** Assign a parking spot using linear probing */
-    public String parkVehicle(String plate) {
-        int preferred = hash(plate);
-        int probes = 0;
+    /** Assign a parking spot using the lot's probing strategy */
+    public synchronized String parkVehicle(String plate) {
+        Integer parkedAt = spotByPlate.get(plate);
+        if (parkedAt != null) return "Vehicle already parked at spot #" + parkedAt;
+        if (currentOccupied == capacity) return "Parking Lot Full!";
 
-        for (int i = 0; i < TOTAL_SPOTS; i++) {
-            int spot = (preferred + i) % TOTAL_SPOTS;
+        int hash = plateHash(plate);
+        long now = clock.getAsLong();
+        int spot;
+        int probes;
 
-            if (table[spot].status == Status.EMPTY || table[spot].status == Status.DELETED) {
-                table[spot].status = Status.OCCUPIED;
-                table[spot].plate = plate;
-                table[spot].entryTime = System.currentTimeMillis();
-                table[spot].probes = probes;
+        if (strategy.displaces()) {
+            long relocatedBefore = relocations;
+            int walk = parkRobinHood(plate, hash, now);
+            spot = spotByPlate.get(plate);
+            probes = table[spot].probes;
+            totalProbes += walk;
+            lastParkProbes = walk;
+            totalParks++;
+            series.record(now, true, currentOccupied);
+
+            long relocated = relocations - relocatedBefore;
+            return "Assigned spot #" + spot + " (" + walk + " probes" +
+                    (relocated > 0 ? ", " + relocated + " re-parked)" : ")");
+        }
+
+        if (strategy.isLinear()) {
+            // Same spot a slot-by-slot walk picks, found through the bitmap
+            int home = strategy.spot(hash, 0, capacity);
+            spot = freeSpots.nextFreeWrapping(home);
+            probes = (spot - home + capacity) % capacity;
+        } else {
+            IntUnaryOperator sequence = strategy.sequence(hash, capacity);
+            probes = 0;
+            spot = sequence.applyAsInt(0);
+            while (!freeSpots.isFree(spot) && ++probes < sequenceReach) {
+                spot = sequence.applyAsInt(probes);
+            }
+            // Sequence that does not cover the lot (quadratic) and every spot it reaches is taken:
+            // take the next free spot, probes stays the positions actually walked
+            if (probes == sequenceReach) spot = freeSpots.nextFreeWrapping(sequence.applyAsInt(0));
+        }
 
-                currentOccupied++;
-                totalParks++;
-                totalProbes += probes;
+        occupy(spot, plate, now, probes);
+        totalParks++;
+        totalProbes += probes;
+        lastParkProbes = probes;
 
-                updateHourlyStats();
+        series.record(now, true, currentOccupied);
 
-                return "Assigned spot #" + spot + " (" + probes + " probes)";
+        return "Assigned spot #" + spot + " (" + probes + " probes)";
+    }
+
+    /**
+     * Robin Hood insertion along the linear sequence: whenever the vehicle being
+     * placed is further from home than the one parked in the spot, they trade and
+     * the displaced vehicle continues the walk. Returns the spots examined.
+     */
+    private int parkRobinHood(String plate, int hash, long entryTime) {
+        int spot = strategy.spot(hash, 0, capacity);
+        int probes = 0;
+
+        for (int walk = 0; ; walk++) {
+            SpotEntry entry = table[spot];
+            if (entry.status != Status.OCCUPIED) {
+                occupy(spot, plate, entryTime, probes);
+                return walk;
             }
+            if (entry.probes < probes) {
+                String displacedPlate = entry.plate;
+                long displacedEntryTime = entry.entryTime;
+                int displacedProbes = entry.probes;
+
+                entry.plate = plate;
+                entry.entryTime = entryTime;
+                entry.probes = probes;
+                spotByPlate.put(plate, spot);
+                relocations++;
 
+                plate = displacedPlate;
+                entryTime = displacedEntryTime;
+                probes = displacedProbes;
+            }
+            spot = (spot + 1) % capacity;
             probes++;
         }
+    }
+
+    private void occupy(int spot, String plate, long entryTime, int probes) {
+        if (table[spot].status == Status.DELETED) tombstones--;
+        table[spot].status = Status.OCCUPIED;
+        table[spot].plate = plate;
+        table[spot].entryTime = entryTime;
+        table[spot].probes = probes;
+        freeSpots.markTaken(spot);
+        spotByPlate.put(plate, spot);
+        currentOccupied++;
+    }
+
+    /** Free spot and compute billing; the stay is written to the ledger before the spot is freed */
+    public synchronized String exitVehicle(String plate) {
+        Integer parkedAt = spotByPlate.get(plate);
+        if (parkedAt == null) return "Vehicle not found.";
+
+        int spot = parkedAt;
+        long now = clock.getAsLong();
+        long entryTime = table[spot].entryTime;
+        long durationMillis = now - entryTime;
+        long hundredthsOfHour = roundHalfUp(durationMillis, 36_000);
+        long feeCents = feeCents(durationMillis);
+
+        // A ledger failure propagates with the vehicle still parked, so no exit goes unbilled
+        ExitLedger ledger = exitLedger;
+        if (ledger != null) {
+            ledger.append(ExitLedger.plateId(plate), spot, entryTime, now, (int) feeCents);
+        }
+
+        spotByPlate.remove(plate);
+        probeHistogram.record(table[spot].probes);
+        table[spot].status = Status.DELETED;
+        table[spot].plate = null;
+        freeSpots.markFree(spot);
+        currentOccupied--;
+        series.record(now, false, currentOccupied);
+
+        tombstones++;
+        tombstonesSinceSweep++;
+        if (tombstoneCleanup) cleanUpTombstones(spot);
+
+        return "Spot #" + spot + " freed, Duration: " +
+                twoDecimals(hundredthsOfHour) + "h, Fee: $" +
+                twoDecimals(feeCents);
+    }
+
+    /** Fee for a stay in cents, with exact integer rounding as "%.2f" rounds */
+    public static long feeCents(long durationMillis) {
+        return roundHalfUp(durationMillis * HOURLY_RATE_CENTS, 3_600_000);
+    }
 
-        return "Parking Lot Full!";
+    private static long roundHalfUp(long numerator, long denominator) {
+        long half = denominator / 2;
+        return numerator >= 0 ? (numerator + half) / denominator : -((half - numerator) / denominator);
     }
 
-    /** Free spot and compute billing */
-    public String exitVehicle(String plate) {
-        int preferred = hash(plate);
+    // "%.2f" of hundredths without java.util.Formatter, which cost more than the rest of an exit
+    private static String twoDecimals(long hundredths) {
+        if (hundredths < 0) return "-" + twoDecimals(-hundredths);
+        long fraction = hundredths % 100;
+        return (hundredths / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+    }
 
-        for (int i = 0; i < TOTAL_SPOTS; i++) {
-            int spot = (preferred + i) % TOTAL_SPOTS;
+    /** Spot the vehicle is parked in, or -1 */
+    public synchronized int findVehicle(String plate) {
+        Integer spot = spotByPlate.get(plate);
+        return spot == null ? -1 : spot;
+    }
 
-            if (table[spot].status == Status.OCCUPIED && table[spot].plate.equals(plate)) {
-                long durationMillis = System.currentTimeMillis() - table[spot].entryTime;
+    /** Probes the latest successful parkVehicle walked, re-parking included; the count its message reports */
+    public synchronized int getLastParkProbes() {
+        return lastParkProbes;
+    }
 
-                table[spot].status = Status.DELETED;
-                currentOccupied--;
+    /** Snapshot of the probe lengths of completed stays: how far along its sequence each vehicle ended up */
+    public synchronized ProbeHistogram getProbeHistogram() {
+        return new ProbeHistogram(probeHistogram);
+    }
 
-                double hours = durationMillis / (1000.0 * 60 * 60);
-                double fee = hours * 5.50;  // $5.50 per hour
+    /** Records every exit from now on in this ledger; null stops recording. The caller closes it */
+    public synchronized void setExitLedger(ExitLedger ledger) {
+        this.exitLedger = ledger;
+    }
+
+    /** Enables or disables tombstone cleanup after exits (on by default) */
+    public synchronized void setTombstoneCleanup(boolean enabled) {
+        this.tombstoneCleanup = enabled;
+    }
 
-                return "Spot #" + spot + " freed, Duration: " +
-                        String.format("%.2f", hours) + "h, Fee: $" +
-                        String.format("%.2f", fee);
+    /**
+     * A tombstone only matters while some parked vehicle's probe sequence runs
+     * through it. Incrementally (linear sequences only), a tombstone followed by an
+     * EMPTY spot ends every sequence reaching it, so it and the tombstones just
+     * before it become EMPTY. Periodically, a full sweep clears every tombstone no
+     * sequence covers. Non-linear lots are not swept: parking goes through the free
+     * bitmap and exits through the plate index, so nothing walks their sequences and
+     * replaying every vehicle's sequence would only cost time.
+     */
+    private void cleanUpTombstones(int spot) {
+        if (!strategy.isLinear()) return;
+        if (table[(spot + 1) % capacity].status == Status.EMPTY) {
+            for (int i = spot; table[i].status == Status.DELETED; i = (i - 1 + capacity) % capacity) {
+                table[i].status = Status.EMPTY;
+                tombstones--;
             }
         }
+        if (tombstonesSinceSweep >= sweepInterval) sweepTombstones();
+    }
+
+    /** Marks each spot covered by a parked vehicle's linear probe range, then clears the rest */
+    private void sweepTombstones() {
+        tombstonesSinceSweep = 0;
+        int[] coverage = linearCoverage();
 
-        return "Vehicle not found.";
+        int covered = 0;
+        for (int spot = 0; spot < capacity; spot++) {
+            covered += coverage[spot];
+            if (covered == 0 && table[spot].status == Status.DELETED) {
+                table[spot].status = Status.EMPTY;
+                tombstones--;
+            }
+        }
     }
 
-    /** Finds nearest available spot based on entrance proximity */
-    public int findNearestAvailableSpot() {
-        for (int i = 0; i < TOTAL_SPOTS; i++) {
-            if (table[i].status == Status.EMPTY) return i;
+    /** O(n) difference array over the cyclic ranges [home, spot) */
+    private int[] linearCoverage() {
+        int[] coverage = new int[capacity + 1];
+        for (int spot = 0; spot < capacity; spot++) {
+            if (table[spot].status != Status.OCCUPIED) continue;
+            int home = strategy.spot(plateHash(table[spot].plate), 0, capacity);
+            coverage[home]++;
+            if (home <= spot) {
+                coverage[spot]--;
+            } else {
+                coverage[capacity]--;
+                coverage[0]++;
+                coverage[spot]--;
+            }
         }
-        return -1;
+        return coverage;
     }
 
-    /** Updates hourly occupancy statistics */
-    private void updateHourlyStats() {
-        int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
-        hourlyOccupancy[hour] += 1;
+    /** Slots examined by an open-addressing walk from the hash slot; the walk before the plate index existed */
+    private int probeWalk(String plate, boolean stopAtEmpty) {
+        IntUnaryOperator sequence = strategy.sequence(plateHash(plate), capacity);
+        for (int i = 0; i < capacity; i++) {
+            SpotEntry entry = table[sequence.applyAsInt(i)];
+            if (entry.status == Status.OCCUPIED && entry.plate.equals(plate)) return i + 1;
+            if (stopAtEmpty && entry.status == Status.EMPTY) return i + 1;
+        }
+        return capacity;
+    }
+
+    /** Finds nearest available spot based on entrance proximity */
+    public synchronized int findNearestAvailableSpot() {
+        return freeSpots.nextFree(0); // DELETED spots are free too
+    }
+
+    /** Arrivals, departures and occupancy percentiles over [fromMillis, toMillis), from the per-minute series */
+    public synchronized WindowStats getWindowStats(long fromMillis, long toMillis) {
+        series.advanceTo(clock.getAsLong() / 60_000);
+        return series.window(Math.floorDiv(fromMillis, 60_000), Math.floorDiv(toMillis + 59_999, 60_000));
+    }
+
+    /** Clock time of day for a timestamp, e.g. "08:37", at the offset in force at that instant */
+    private String timeOfDay(long millis) {
+        long offsetMillis = zoneRules.getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds() * 1000L;
+        long minuteOfDay = Math.floorMod(Math.floorDiv(millis + offsetMillis, 60_000), 24 * 60);
+        return String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
     }
 
     /** Retrieve parking lot statistics */
-    public String getStatistics() {
-        double occupancy = (currentOccupied / (double) TOTAL_SPOTS) * 100;
+    public synchronized String getStatistics() {
+        double occupancy = (currentOccupied / (double) capacity) * 100;
 
-        int peakHour = 0;
-        int max = 0;
-        for (int i = 0; i < 24; i++) {
-            if (hourlyOccupancy[i] > max) {
-                max = hourlyOccupancy[i];
-                peakHour = i;
-            }
-        }
+        // Peak of the last 24 hours only, not of every day mixed together
+        long now = clock.getAsLong();
+        series.advanceTo(now / 60_000);
+        WindowStats lastDay = series.window(now / 60_000 - 24 * 60 + 1, now / 60_000 + 1);
 
         double avgProbes = (totalParks == 0) ? 0 : totalProbes / totalParks;
 
         return "Occupancy: " + String.format("%.1f", occupancy) + "%\n" +
                "Avg Probes: " + String.format("%.2f", avgProbes) + "\n" +
-               "Peak Hour: " + peakHour + ":00–" + (peakHour + 1) + ":00";
+               "Probes per Stay (" + strategy.name().toLowerCase() + "): " + probeHistogram + "\n" +
+               "Tombstones: " + tombstones + "\n" +
+               "Last 24h: " + lastDay + "\n" +
+               "Peak: " + lastDay.peakOccupancy + " spots at " +
+               (lastDay.peakMillis < 0 ? "-" : timeOfDay(lastDay.peakMillis));
+    }
+
+    /** Probe statistics after a long day of churn: the open-addressing walk with and without tombstone cleanup */
+    private static void probeStatsDemo() {
+        for (double occupancy : new double[] {0.5, 0.8}) {
+            System.out.printf("=== Exit/lookup probes after 200k arrivals and departures at ~%.0f%% occupancy ===%n",
+                    occupancy * 100);
+            System.out.printf("%-30s %10s %10s %11s%n", "Lookup", "hit avg", "miss avg", "tombstones");
+
+            for (boolean cleanup : new boolean[] {false, true}) {
+                ParkingLotSystem lot = new ParkingLotSystem();
+                lot.setTombstoneCleanup(cleanup);
+                List<String> parked = churn(lot, occupancy, new Random(44));
+
+                if (!cleanup) {
+                    printProbeRow("full walk (before)", lot, parked, false);
+                    printProbeRow("walk to EMPTY, no cleanup", lot, parked, true);
+                } else {
+                    printProbeRow("walk to EMPTY, with cleanup", lot, parked, true);
+                }
+            }
+            System.out.println();
+        }
+    }
+
+    private static List<String> churn(ParkingLotSystem lot, double occupancy, Random random) {
+        List<String> parked = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            boolean arrive = parked.size() < lot.capacity * occupancy ? random.nextInt(10) < 7 : random.nextInt(10) < 3;
+            if (arrive || parked.isEmpty()) {
+                String plate = "CAR-" + i;
+                if (lot.parkVehicle(plate).startsWith("Assigned")) parked.add(plate);
+            } else {
+                int pick = random.nextInt(parked.size());
+                String plate = parked.get(pick);
+                parked.set(pick, parked.get(parked.size() - 1));
+                parked.remove(parked.size() - 1);
+                lot.exitVehicle(plate);
+            }
+        }
+        return parked;
+    }
+
+    private static void printProbeRow(String label, ParkingLotSystem lot, List<String> parked, boolean stopAtEmpty) {
+        long hitProbes = 0;
+        for (String plate : parked) hitProbes += lot.probeWalk(plate, stopAtEmpty);
+        long missProbes = 0;
+        int misses = 1_000;
+        for (int i = 0; i < misses; i++) missProbes += lot.probeWalk("GONE-" + i, stopAtEmpty);
+
+        System.out.printf("%-30s %10.2f %10.2f %11d%n", label,
+                hitProbes / (double) parked.size(), missProbes / (double) misses, lot.tombstones);
+    }
+
+    public static void main(String[] args) throws java.io.IOException {
+        ParkingLotSystem lot = new ParkingLotSystem();
+        System.out.println(lot.parkVehicle("ABC-1234"));
+        System.out.println(lot.parkVehicle("ABC-1235"));
+        System.out.println(lot.parkVehicle("XYZ-9999"));
+        System.out.println(lot.exitVehicle("ABC-1234"));
+        System.out.println(lot.getStatistics());
+        System.out.println();
+
+        probeStatsDemo();
+        probingBenchmark();
+        timeSeriesDemo();
+        ledgerDemo();
+    }
+
+    // --- Exit ledger: 90 replayed days recorded, then aggregated in one pass ---
+    private static void ledgerDemo() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("parking-exits", ".bin");
+        ZoneId zone = ZoneId.systemDefault();
+        long firstDay = java.time.LocalDate.of(2026, 7, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long day = 24 * 60 * 60_000L;
+        long[] now = {firstDay};
+
+        try {
+            ParkingLotSystem lot = new ParkingLotSystem(DEFAULT_CAPACITY, Probing.LINEAR, () -> now[0], 24 * 60);
+            Random random = new Random(49);
+            try (ExitLedger ledger = new ExitLedger(file)) {
+                lot.setExitLedger(ledger);
+                for (int d = 0; d < 90; d++) {
+                    for (DayEvent event : syntheticDay(random, d)) {
+                        now[0] = firstDay + d * day + event.minute * 60_000L;
+                        if (event.arrival) lot.parkVehicle(event.plate);
+                        else lot.exitVehicle(event.plate);
+                    }
+                }
+                lot.setExitLedger(null);
+                System.out.println();
+                System.out.printf("=== Exit ledger: 90 replayed days, %,d exits, %d KB ===%n",
+                        ledger.records(), (8 + ledger.records() * ExitLedger.RECORD_BYTES) / 1024);
+            }
+
+            ExitLedger.LedgerReport report = ExitLedger.aggregate(file, zone);
+            // The last "day" only holds the closing-time exits at midnight
+            for (ExitLedger.DayTotals totals : report.days.subList(report.days.size() - 4, report.days.size() - 1)) {
+                System.out.println(totals);
+            }
+            System.out.printf("Revenue $%,.2f over %d days, aggregated in %.1f ms%n", report.revenueCents() / 100.0,
+                    report.days.size(), report.elapsedNanos / 1e6);
+
+            // Hash placement favours some spots: compare the busiest and idlest
+            int busiest = 0;
+            int idlest = 0;
+            for (int spot = 1; spot < report.spots(); spot++) {
+                if (report.utilization(spot) > report.utilization(busiest)) busiest = spot;
+                if (report.utilization(spot) < report.utilization(idlest)) idlest = spot;
+            }
+            System.out.printf("Spot utilization: busiest #%d %.1f%%, idlest #%d %.1f%%%n", busiest,
+                    report.utilization(busiest) * 100, idlest, report.utilization(idlest) * 100);
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    // --- Time series: a replayed week on a simulated clock ---
+    private static void timeSeriesDemo() {
+        long weekStart = java.time.LocalDate.of(2026, 10, 12).atStartOfDay(ZoneId.systemDefault())
+                .toInstant().toEpochMilli(); // a Monday
+        long[] now = {weekStart};
+        ParkingLotSystem lot = new ParkingLotSystem(DEFAULT_CAPACITY, Probing.DOUBLE_HASHING,
+                () -> now[0], DEFAULT_RETENTION_MINUTES);
+
+        Random random = new Random(48);
+        String[] dayNames = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+        long day = 24 * 60 * 60_000L;
+        for (int d = 0; d < 7; d++) {
+            for (DayEvent event : syntheticDay(random, d)) {
+                now[0] = weekStart + d * day + event.minute * 60_000L;
+                if (event.arrival) lot.parkVehicle(event.plate);
+                else lot.exitVehicle(event.plate);
+            }
+        }
+
+        System.out.println();
+        System.out.println("=== Replayed week, " + DEFAULT_CAPACITY + " spots, per-minute series ===");
+        for (int d = 0; d < 7; d++) {
+            WindowStats stats = lot.getWindowStats(weekStart + d * day, weekStart + (d + 1) * day);
+            System.out.println(dayNames[d] + "  " + stats + " at " + lot.timeOfDay(stats.peakMillis));
+        }
+        WindowStats wednesdayRush = lot.getWindowStats(weekStart + 2 * day + 7 * 3_600_000L,
+                weekStart + 2 * day + 10 * 3_600_000L);
+        System.out.println("Wed 07:00-10:00  " + wednesdayRush + ", p99 " + wednesdayRush.occupancyPercentile(0.99));
+        WindowStats week = lot.getWindowStats(weekStart, now[0]);
+        System.out.println("Whole week  " + week + " at " + dayNames[(int) ((week.peakMillis - weekStart) / day)]
+                + " " + lot.timeOfDay(week.peakMillis));
+
+        // Recording touches only the ring's primitive arrays
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            MinuteSeries series = new MinuteSeries(DEFAULT_RETENTION_MINUTES, DEFAULT_CAPACITY);
+            for (int i = 0; i < 100_000; i++) series.record(i * 6_000L, (i & 1) == 0, i % DEFAULT_CAPACITY); // warm up
+            long before = allocations.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < 1_000_000; i++) {
+                series.record(600_000_000L + i * 6_000L, (i & 1) == 0, i % DEFAULT_CAPACITY);
+            }
+            long allocated = allocations.getCurrentThreadAllocatedBytes() - before;
+            System.out.println("Recording 1M events allocated " + allocated + " bytes");
+        }
+    }
+
+    // --- Probing strategy benchmark: replay the same days through each strategy ---
+
+    /** One arrival or departure in a replayed day */
+    private static class DayEvent {
+        final int minute;
+        final boolean arrival;
+        final String plate;
+
+        DayEvent(int minute, boolean arrival, String plate) {
+            this.minute = minute;
+            this.arrival = arrival;
+            this.plate = plate;
+        }
+    }
+
+    /**
+     * A synthetic day: Poisson arrivals with a commuter peak, plates that share
+     * state and series prefixes, exponential stays (mean 3h, at least 15 min).
+     * Whoever is still parked leaves at closing.
+     */
+    private static List<DayEvent> syntheticDay(Random random, int day) {
+        double[] hourlyRate = {0.2, 0.1, 0.1, 0.1, 0.3, 0.8, 1.8, 3.4, 3.9, 3.1, 2.2, 2.1,
+                               2.4, 2.2, 2.0, 2.0, 2.2, 2.4, 1.7, 1.2, 0.9, 0.7, 0.5, 0.4}; // arrivals per minute
+        String[] states = {"MH", "KA", "DL", "GJ"};
+        List<DayEvent> events = new ArrayList<>();
+
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            // Knuth's Poisson sampler, fine for small means
+            double limit = Math.exp(-hourlyRate[minute / 60]);
+            double product = random.nextDouble();
+            while (product > limit) {
+                String plate = String.format("%s%02d%c%c%04d", states[random.nextInt(states.length)],
+                        1 + random.nextInt(12), 'A' + day % 26, 'A' + random.nextInt(3), random.nextInt(10_000));
+                int stay = 15 + (int) (-180 * Math.log(1 - random.nextDouble()));
+                events.add(new DayEvent(minute, true, plate));
+                events.add(new DayEvent(Math.min(minute + stay, 24 * 60), false, plate));
+                product *= random.nextDouble();
+            }
+        }
+        // Departures free their spots before same-minute arrivals look for one
+        events.sort(Comparator.comparingInt((DayEvent e) -> e.minute).thenComparing(e -> e.arrival));
+        return events;
+    }
+
+    private static void probingBenchmark() {
+        int days = 30;
+        List<List<DayEvent>> replay = new ArrayList<>();
+        Random random = new Random(45);
+        for (int day = 0; day < days; day++) replay.add(syntheticDay(random, day));
+
+        System.out.println("=== Probing strategies: " + days + " replayed days, " + DEFAULT_CAPACITY + " spots ===");
+        System.out.printf("%-15s %-46s %9s %10s %11s %7s%n",
+                "Strategy", "Probe length per stay", "Park walk", "Re-parked", "Turned away", "ms");
+
+        ProbingStrategy best = null;
+        int bestP99 = Integer.MAX_VALUE;
+        for (Probing strategy : Probing.values()) {
+            ParkingLotSystem lot = new ParkingLotSystem(strategy);
+            long turnedAway = 0;
+            long start = System.nanoTime();
+
+            for (List<DayEvent> events : replay) {
+                for (DayEvent event : events) {
+                    if (!event.arrival) {
+                        lot.exitVehicle(event.plate);
+                    } else if (lot.parkVehicle(event.plate).equals("Parking Lot Full!")) {
+                        turnedAway++;
+                    }
+                }
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            ProbeHistogram histogram = lot.getProbeHistogram();
+            System.out.printf("%-15s %-46s %9.2f %10d %11d %7d%n", strategy.name().toLowerCase(), histogram,
+                    lot.totalProbes / lot.totalParks, lot.relocations, turnedAway, millis);
+            if (histogram.percentile(0.99) < bestP99) {
+                bestP99 = histogram.percentile(0.99);
+                best = strategy;
+            }
+        }
+        System.out.println("Lowest p99 probes: " + best.name().toLowerCase() + " (" + bestP99 + ")");
     }
-}
\ No newline at end of file
+}
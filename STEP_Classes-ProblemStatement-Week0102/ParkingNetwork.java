@@ -0,0 +1,665 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent parking engine for several garages with several gates each.
+ *
+ * Spots come in classes (standard, compact, EV charger, accessible), and every
+ * class in a lot has its own free-spot index: a bitmap of 64-bit words updated
+ * with CAS, under a tree of 64-way hint levels, so the nearest free spot of a
+ * class on either side of an entrance is found in O(log64 n). A gate claims a
+ * spot by clearing its bit; two gates racing for the same spot cannot both win,
+ * and the loser simply searches again, so gates never wait on a lock. Plates are
+ * indexed network-wide in a ConcurrentHashMap, and all counters are LongAdders,
+ * whose per-thread cells keep gates from contending on a shared count.
+ */
+public class ParkingNetwork {
+
+    // Volatile-mode access to elements of the plain long[] bitmaps
+    private static final VarHandle WORD = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // --- Kinds of spot; a vehicle asks for one and may fall back to compatible ones ---
+    public enum SpotClass {
+        STANDARD, COMPACT, EV, ACCESSIBLE;
+
+        private static final SpotClass[][] COMPATIBLE = {
+            {STANDARD},             // standard cars do not fit compact spots or block chargers
+            {COMPACT, STANDARD},
+            {EV, STANDARD},         // parks without charging
+            {ACCESSIBLE, STANDARD}
+        };
+
+        /** Classes a vehicle wanting this class may use, best first */
+        public SpotClass[] compatible() {
+            return COMPATIBLE[ordinal()];
+        }
+    }
+
+    // --- Issued at entry, returned at exit ---
+    public static final class Ticket {
+        public final Lot lot;
+        public final int spot;
+        public final SpotClass spotClass;
+        public final String plate;
+        public final long entryMillis;
+
+        Ticket(Lot lot, int spot, SpotClass spotClass, String plate, long entryMillis) {
+            this.lot = lot;
+            this.spot = spot;
+            this.spotClass = spotClass;
+            this.plate = plate;
+            this.entryMillis = entryMillis;
+        }
+
+        // Same tariff and rounding as a single ParkingLotSystem
+        public long feeCents(long exitMillis) {
+            return ParkingLotSystem.feeCents(exitMillis - entryMillis);
+        }
+    }
+
+    // ------------------------------------------------------
+    // Lock-free free-spot index. levels[0] bit i is spot i and
+    // is the truth; bit i of levels[k + 1] is a hint that word
+    // i of levels[k] may be non-zero. Releases set the spot bit,
+    // then every hint above it. A claimer that empties a word
+    // clears its hint and re-checks the word, re-setting the
+    // hints up to the root if it refilled meanwhile, so in a
+    // quiescent index every non-zero word has its hint set
+    // ------------------------------------------------------
+    static final class AtomicSpotBitmap {
+        private final int size;
+        private final long[][] levels;
+        private final LongAdder casRetries;
+
+        /** Index over spots 0..size-1, all initially taken */
+        AtomicSpotBitmap(int size, LongAdder casRetries) {
+            this.size = size;
+            this.casRetries = casRetries;
+            List<long[]> built = new ArrayList<>();
+            int bits = size;
+            do {
+                built.add(new long[(bits + 63) >>> 6]);
+                bits = (bits + 63) >>> 6;
+            } while (bits > 1);
+            this.levels = built.toArray(new long[0][]);
+        }
+
+        void release(int spot) {
+            long bit = 1L << spot;
+            long previous = (long) WORD.getAndBitwiseOr(levels[0], spot >>> 6, bit);
+            if ((previous & bit) != 0) {
+                throw new IllegalStateException("spot " + spot + " released twice");
+            }
+            setHints(1, spot >>> 6);
+        }
+
+        // Sets the hint for word index of levels[level - 1] and all hints above it
+        private void setHints(int level, int index) {
+            for (; level < levels.length; level++, index >>>= 6) {
+                WORD.getAndBitwiseOr(levels[level], index >>> 6, 1L << index);
+            }
+        }
+
+        // Word index of levels[level - 1] looked empty: clear its hint, climbing while words empty out
+        private void clearHints(int level, int index) {
+            for (; level < levels.length; level++, index >>>= 6) {
+                long bit = 1L << index;
+                long previous = (long) WORD.getAndBitwiseAnd(levels[level], index >>> 6, ~bit);
+                if ((long) WORD.getVolatile(levels[level - 1], index) != 0) {
+                    setHints(level, index); // refilled by a racing release
+                    return;
+                }
+                if ((previous & ~bit) != 0) return; // hint word still has other bits
+            }
+        }
+
+        boolean isFree(int spot) {
+            return ((long) WORD.getVolatile(levels[0], spot >>> 6) & (1L << spot)) != 0;
+        }
+
+        /** Takes this spot if it is free */
+        boolean tryClaim(int spot) {
+            int w = spot >>> 6;
+            long bit = 1L << spot;
+            while (true) {
+                long bits = (long) WORD.getVolatile(levels[0], w);
+                if ((bits & bit) == 0) return false;
+                if (WORD.compareAndSet(levels[0], w, bits, bits & ~bit)) {
+                    if ((bits & ~bit) == 0) clearHints(1, w);
+                    return true;
+                }
+                casRetries.increment();
+            }
+        }
+
+        /** Claims the free spot closest to position (ties go up); -1 if none is free */
+        int claimNearest(int position) {
+            while (true) {
+                int spot = nearest(position);
+                if (spot < 0 || tryClaim(spot)) return spot;
+                casRetries.increment(); // another gate took it between search and claim
+            }
+        }
+
+        /** Free spot closest to position, without claiming it; -1 if none */
+        int nearest(int position) {
+            int above = next(position);
+            int below = position > 0 ? previous(position - 1) : -1;
+            if (below < 0) return above;
+            if (above < 0) return below;
+            return above - position <= position - below ? above : below;
+        }
+
+        /** Lowest free spot at or after from, or -1; one climb and one descent through the levels */
+        int next(int from) {
+            while (from < size) {
+                int level = 0;
+                int index = from;
+                int found = -1;
+
+                // Climb until a word has a set bit at or after index
+                while (true) {
+                    int w = index >>> 6;
+                    if (w >= levels[level].length) return -1;
+                    long bits = (long) WORD.getVolatile(levels[level], w) & (-1L << index);
+                    if (bits != 0) {
+                        found = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        break;
+                    }
+                    if (++level == levels.length) return -1;
+                    index = w + 1;
+                }
+
+                // Descend along the lowest set bits
+                for (; level > 0; level--) {
+                    long bits = (long) WORD.getVolatile(levels[level - 1], found);
+                    if (bits == 0) break;
+                    found = (found << 6) + Long.numberOfTrailingZeros(bits);
+                }
+                if (level == 0) return found;
+
+                // Stale hint: drop it and resume after the block it covered
+                clearHints(level, found);
+                from = (int) Math.min(size, (long) (found + 1) << (6 * level));
+            }
+            return -1;
+        }
+
+        /** Highest free spot at or before from, or -1 */
+        int previous(int from) {
+            while (from >= 0) {
+                int level = 0;
+                int index = Math.min(from, size - 1);
+                int found = -1;
+
+                while (true) {
+                    int w = index >>> 6;
+                    long bits = (long) WORD.getVolatile(levels[level], w) & (-1L >>> (63 - (index & 63)));
+                    if (bits != 0) {
+                        found = (w << 6) + 63 - Long.numberOfLeadingZeros(bits);
+                        break;
+                    }
+                    if (w == 0 || ++level == levels.length) return -1;
+                    index = w - 1;
+                }
+
+                for (; level > 0; level--) {
+                    long bits = (long) WORD.getVolatile(levels[level - 1], found);
+                    if (bits == 0) break;
+                    found = (found << 6) + 63 - Long.numberOfLeadingZeros(bits);
+                }
+                if (level == 0) return found;
+
+                clearHints(level, found);
+                from = (found << (6 * level)) - 1;
+            }
+            return -1;
+        }
+    }
+
+    // --- One garage: its spot layout, a free-spot index per class, its gates and striped counters ---
+    public final class Lot {
+        public final String name;
+        public final int capacity;
+        private final SpotClass[] layout;
+        private final AtomicSpotBitmap[] freeByClass = new AtomicSpotBitmap[SpotClass.values().length];
+        private final int[] capacityByClass = new int[SpotClass.values().length];
+        private final Gate[] gates;
+
+        final LongAdder[] occupiedByClass = new LongAdder[SpotClass.values().length];
+        final LongAdder parks = new LongAdder();
+        final LongAdder exits = new LongAdder();
+        final LongAdder fallbacks = new LongAdder();
+        final LongAdder turnedAway = new LongAdder();
+        final LongAdder casRetries = new LongAdder();
+
+        Lot(String name, SpotClass[] layout, int gateCount) {
+            this.name = name;
+            this.capacity = layout.length;
+            this.layout = layout.clone();
+            for (SpotClass spotClass : SpotClass.values()) {
+                freeByClass[spotClass.ordinal()] = new AtomicSpotBitmap(capacity, casRetries);
+                occupiedByClass[spotClass.ordinal()] = new LongAdder();
+            }
+            for (int spot = 0; spot < capacity; spot++) {
+                freeByClass[layout[spot].ordinal()].release(spot);
+                capacityByClass[layout[spot].ordinal()]++;
+            }
+
+            this.gates = new Gate[gateCount];
+            // Gates spread evenly along the spot numbering
+            for (int g = 0; g < gateCount; g++) {
+                gates[g] = new Gate(this, g, (int) ((long) capacity * g / gateCount));
+            }
+        }
+
+        public Gate gate(int index) {
+            return gates[index];
+        }
+
+        public int gateCount() {
+            return gates.length;
+        }
+
+        public SpotClass classOf(int spot) {
+            return layout[spot];
+        }
+
+        public int capacity(SpotClass spotClass) {
+            return capacityByClass[spotClass.ordinal()];
+        }
+
+        public long occupied(SpotClass spotClass) {
+            return occupiedByClass[spotClass.ordinal()].sum();
+        }
+
+        public long occupied() {
+            long total = 0;
+            for (LongAdder count : occupiedByClass) total += count.sum();
+            return total;
+        }
+
+        /** Nearest free spot of this class to the gate, without taking it; -1 if the class is full */
+        public int nearestFree(SpotClass spotClass, int gate) {
+            return freeByClass[spotClass.ordinal()].nearest(gates[gate].position);
+        }
+
+        boolean isFree(int spot) {
+            return freeByClass[layout[spot].ordinal()].isFree(spot);
+        }
+
+        void release(int spot) {
+            freeByClass[layout[spot].ordinal()].release(spot);
+        }
+    }
+
+    // --- Entry/exit gate: safe to drive from its own thread, alongside every other gate ---
+    public final class Gate {
+        public final Lot lot;
+        public final int id;
+        public final int position;
+
+        Gate(Lot lot, int id, int position) {
+            this.lot = lot;
+            this.id = id;
+            this.position = position;
+        }
+
+        public Ticket enter(String plate) {
+            return enter(plate, SpotClass.STANDARD);
+        }
+
+        /**
+         * Ticket for the nearest free spot of the wanted class, else of the next
+         * compatible class; the vehicle's existing ticket if already parked; null if
+         * every compatible class is full.
+         */
+        public Ticket enter(String plate, SpotClass wanted) {
+            Ticket existing = tickets.get(plate);
+            if (existing != null) return existing;
+
+            for (SpotClass spotClass : wanted.compatible()) {
+                int spot = lot.freeByClass[spotClass.ordinal()].claimNearest(position);
+                if (spot < 0) continue;
+
+                Ticket ticket = new Ticket(lot, spot, spotClass, plate, System.currentTimeMillis());
+                existing = tickets.putIfAbsent(plate, ticket);
+                if (existing != null) { // same plate entered through another gate meanwhile
+                    lot.release(spot);
+                    return existing;
+                }
+                lot.occupiedByClass[spotClass.ordinal()].increment();
+                lot.parks.increment();
+                if (spotClass != wanted) lot.fallbacks.increment();
+                return ticket;
+            }
+            lot.turnedAway.increment();
+            return null;
+        }
+
+        /** Frees the vehicle's spot; null if it is not parked in this gate's lot */
+        public Ticket exit(String plate) {
+            Ticket ticket = tickets.get(plate);
+            if (ticket == null || ticket.lot != lot || !tickets.remove(plate, ticket)) return null;
+
+            lot.release(ticket.spot);
+            lot.occupiedByClass[ticket.spotClass.ordinal()].decrement();
+            lot.exits.increment();
+            return ticket;
+        }
+    }
+
+    private final List<Lot> lots = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    /** Lot of standard spots */
+    public Lot addLot(String name, int capacity, int gates) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        SpotClass[] layout = new SpotClass[capacity];
+        Arrays.fill(layout, SpotClass.STANDARD);
+        return addLot(name, layout, gates);
+    }
+
+    /** Lot whose spot i has class layout[i] */
+    public Lot addLot(String name, SpotClass[] layout, int gates) {
+        if (layout.length == 0 || gates <= 0) throw new IllegalArgumentException("capacity and gates must be positive");
+        Lot lot = new Lot(name, layout, gates);
+        lots.add(lot);
+        return lot;
+    }
+
+    public List<Lot> lots() {
+        return lots;
+    }
+
+    /** Where the vehicle is parked, or null */
+    public Ticket find(String plate) {
+        return tickets.get(plate);
+    }
+
+    public long capacity() {
+        long total = 0;
+        for (Lot lot : lots) total += lot.capacity;
+        return total;
+    }
+
+    public String getStatistics() {
+        StringBuilder out = new StringBuilder();
+        long occupied = 0;
+        for (Lot lot : lots) {
+            occupied += lot.occupied();
+            out.append(String.format("%-8s %7d/%-7d spots  %d gates  parks %d  exits %d  turned away %d  CAS retries %d%n",
+                    lot.name, lot.occupied(), lot.capacity, lot.gateCount(), lot.parks.sum(), lot.exits.sum(),
+                    lot.turnedAway.sum(), lot.casRetries.sum()));
+            if (lot.capacity(SpotClass.STANDARD) == lot.capacity) continue;
+
+            out.append("        ");
+            for (SpotClass spotClass : SpotClass.values()) {
+                out.append(String.format(" %s %d/%d", spotClass.name().toLowerCase(),
+                        lot.occupied(spotClass), lot.capacity(spotClass)));
+            }
+            out.append("  fallbacks ").append(lot.fallbacks.sum()).append(System.lineSeparator());
+        }
+        out.append(String.format("Network: %d/%d spots occupied (%.1f%%)", occupied, capacity(),
+                100.0 * occupied / Math.max(1, capacity())));
+        return out.toString();
+    }
+
+    // ---------------------------------------------
+    // Consistency check: tickets, counters and indexes agree
+    // ---------------------------------------------
+    private void verify() {
+        for (Lot lot : lots) {
+            BitSet taken = new BitSet(lot.capacity);
+            long[] ticketsByClass = new long[SpotClass.values().length];
+            for (Ticket ticket : tickets.values()) {
+                if (ticket.lot != lot) continue;
+                String where = lot.name + " spot " + ticket.spot;
+                if (taken.get(ticket.spot)) throw new IllegalStateException(where + " issued twice");
+                if (lot.isFree(ticket.spot)) throw new IllegalStateException(where + " ticketed but free");
+                if (lot.classOf(ticket.spot) != ticket.spotClass) throw new IllegalStateException(where + " has the wrong class");
+                taken.set(ticket.spot);
+                ticketsByClass[ticket.spotClass.ordinal()]++;
+            }
+            for (SpotClass spotClass : SpotClass.values()) {
+                long claimed = 0;
+                for (int spot = 0; spot < lot.capacity; spot++) {
+                    if (lot.classOf(spot) == spotClass && !lot.isFree(spot)) claimed++;
+                }
+                long ticketCount = ticketsByClass[spotClass.ordinal()];
+                if (claimed != ticketCount || lot.occupied(spotClass) != ticketCount) {
+                    throw new IllegalStateException(lot.name + " " + spotClass + ": " + claimed + " claimed, "
+                            + ticketCount + " tickets, " + lot.occupied(spotClass) + " counted");
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------
+    // Demo: every gate of every lot on its own thread
+    // ---------------------------------------------
+    private interface GateDriver {
+        boolean enter(String plate);
+
+        void exit(String plate);
+    }
+
+    /** Each driver on its own thread, arriving and departing around share parked vehicles; returns operations/s */
+    private static double runGates(List<GateDriver> drivers, int share, int operations) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int d = 0; d < drivers.size(); d++) {
+            GateDriver driver = drivers.get(d);
+            int gateNumber = d;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(gateNumber);
+                List<String> parked = new ArrayList<>();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < operations; i++) {
+                    boolean arrive = parked.size() < share ? random.nextInt(10) < 7 : random.nextInt(10) < 3;
+                    if (arrive || parked.isEmpty()) {
+                        String plate = "G" + gateNumber + "-" + i;
+                        if (driver.enter(plate)) parked.add(plate);
+                    } else {
+                        int pick = random.nextInt(parked.size());
+                        String plate = parked.get(pick);
+                        parked.set(pick, parked.get(parked.size() - 1));
+                        parked.remove(parked.size() - 1);
+                        driver.exit(plate);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+        return drivers.size() * (double) operations / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    private static void fillRaceDemo() throws InterruptedException {
+        ParkingNetwork network = new ParkingNetwork();
+        Lot lot = network.addLot("race", 1_000, 8);
+
+        // 8 gates x 500 arrivals chase 1000 spots: exactly 1000 tickets, no spot twice
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int g = 0; g < lot.gateCount(); g++) {
+            Gate gate = lot.gate(g);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) gate.enter("R" + gate.id + "-" + i);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        network.verify();
+        System.out.println("=== Fill race: 8 gates, 4000 arrivals, 1000 spots ===");
+        System.out.println("Parked " + lot.occupied() + ", turned away " + lot.turnedAway.sum()
+                + ", CAS retries " + lot.casRetries.sum());
+        System.out.println();
+    }
+
+    /** Accessible spots beside each gate, an EV charger every 10th spot, every 4th spot compact */
+    private static SpotClass[] mixedLayout(int capacity, int gates) {
+        SpotClass[] layout = new SpotClass[capacity];
+        for (int spot = 0; spot < capacity; spot++) {
+            layout[spot] = spot % 10 == 0 ? SpotClass.EV : spot % 4 == 1 ? SpotClass.COMPACT : SpotClass.STANDARD;
+        }
+        for (int g = 0; g < gates; g++) {
+            int position = (int) ((long) capacity * g / gates);
+            for (int spot = Math.max(0, position - 4); spot <= Math.min(capacity - 1, position + 4); spot++) {
+                layout[spot] = SpotClass.ACCESSIBLE;
+            }
+        }
+        return layout;
+    }
+
+    private static void spotClassDemo() throws InterruptedException {
+        ParkingNetwork network = new ParkingNetwork();
+        Lot lot = network.addLot("mixed", mixedLayout(100_000, 4), 4);
+
+        System.out.println("=== Nearest free spot by class, 100k-spot lot, gate 2 at spot " + lot.gate(2).position + " ===");
+        for (SpotClass spotClass : SpotClass.values()) {
+            int spot = lot.nearestFree(spotClass, 2);
+            System.out.printf("%-10s spot %6d  (%d away, %d of this class)%n", spotClass.name().toLowerCase(),
+                    spot, Math.abs(spot - lot.gate(2).position), lot.capacity(spotClass));
+        }
+
+        // Query cost with the lot half full, so searches have to skip taken spots
+        Random random = new Random(47);
+        for (int spot = 0; spot < lot.capacity; spot++) {
+            if (random.nextBoolean() && lot.freeByClass[lot.classOf(spot).ordinal()].tryClaim(spot)) {
+                lot.occupiedByClass[lot.classOf(spot).ordinal()].increment();
+            }
+        }
+        int queries = 1_000_000;
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            checksum += lot.freeByClass[i & 3].nearest(random.nextInt(lot.capacity));
+        }
+        System.out.printf("Nearest-of-class query, half-full lot: %.0f ns (checksum %d)%n",
+                (System.nanoTime() - start) / (double) queries, checksum % 1000);
+        System.out.println();
+
+        // Contention: 8 gate threads with a vehicle mix fight over a small mixed lot
+        ParkingNetwork busy = new ParkingNetwork();
+        Lot small = busy.addLot("busy", mixedLayout(2_000, 4), 4);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Gate gate = small.gate(t % small.gateCount());
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                Random mix = new Random(thread);
+                List<String> parked = new ArrayList<>();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100_000; i++) {
+                    if (parked.isEmpty() || mix.nextInt(100) < 52) {
+                        int kind = mix.nextInt(100);
+                        SpotClass wanted = kind < 55 ? SpotClass.STANDARD : kind < 80 ? SpotClass.COMPACT
+                                : kind < 95 ? SpotClass.EV : SpotClass.ACCESSIBLE;
+                        String plate = "T" + thread + "-" + i;
+                        if (gate.enter(plate, wanted) != null) parked.add(plate);
+                    } else {
+                        String plate = parked.remove(mix.nextInt(parked.size()));
+                        small.gate(mix.nextInt(small.gateCount())).exit(plate);
+                    }
+                }
+            });
+            threads.add(worker);
+            worker.start();
+        }
+        go.countDown();
+        for (Thread worker : threads) worker.join();
+
+        busy.verify();
+        System.out.println("=== Mixed vehicles, 8 gate threads, 2000-spot lot (55% standard, 25% compact, 15% EV, 5% accessible) ===");
+        System.out.println(busy.getStatistics());
+        System.out.println("Consistency check passed");
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        fillRaceDemo();
+        spotClassDemo();
+
+        int lotCount = 4;
+        int spotsPerLot = 30_000;
+        int gatesPerLot = 4;
+        int operations = 250_000;
+        int share = (int) (spotsPerLot * 0.9 / gatesPerLot);
+
+        ParkingNetwork network = new ParkingNetwork();
+        List<GateDriver> gates = new ArrayList<>();
+        for (int l = 0; l < lotCount; l++) {
+            Lot lot = network.addLot("P" + (l + 1), spotsPerLot, gatesPerLot);
+            for (int g = 0; g < gatesPerLot; g++) {
+                Gate gate = lot.gate(g);
+                gates.add(new GateDriver() {
+                    public boolean enter(String plate) {
+                        return gate.enter(plate) != null;
+                    }
+
+                    public void exit(String plate) {
+                        if (gate.exit(plate) == null) throw new IllegalStateException("lost " + plate);
+                    }
+                });
+            }
+        }
+
+        System.out.println("=== " + lotCount + " lots x " + spotsPerLot + " spots, " + gates.size()
+                + " gate threads, " + operations + " arrivals/departures each, ~90% full ===");
+        double throughput = runGates(gates, share, operations);
+
+        network.verify();
+        System.out.println(network.getStatistics());
+        System.out.printf("ParkingNetwork: %.2f M gate operations/s on %d cores, consistency check passed%n",
+                throughput / 1e6, Runtime.getRuntime().availableProcessors());
+
+        // Same load through one synchronized ParkingLotSystem per lot, for comparison
+        List<GateDriver> systems = new ArrayList<>();
+        for (int l = 0; l < lotCount; l++) {
+            ParkingLotSystem system = new ParkingLotSystem(spotsPerLot, ParkingLotSystem.Probing.LINEAR);
+            for (int g = 0; g < gatesPerLot; g++) {
+                systems.add(new GateDriver() {
+                    public boolean enter(String plate) {
+                        return system.parkVehicle(plate).startsWith("Assigned");
+                    }
+
+                    public void exit(String plate) {
+                        system.exitVehicle(plate);
+                    }
+                });
+            }
+        }
+        System.out.printf("Synchronized ParkingLotSystem per lot: %.2f M operations/s%n",
+                runGates(systems, share, operations) / 1e6);
+    }
+}
@@ -0,0 +1,400 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Discrete-event traffic simulator for ParkingLotSystem: Poisson arrivals with a
+ * time-of-day rate profile and a chosen dwell-time distribution, replayed over
+ * simulated days on the lot's own clock. Nothing sleeps; the clock jumps from one
+ * event to the next, so a simulated week of a 20,000-spot lot takes seconds.
+ *
+ * Each run drives parkVehicle/exitVehicle exactly as a gate would and reports
+ * events per second, probe counts (walk per park from the returned message, and
+ * the lot's per-stay histogram), sampled operation latency, and how closely the
+ * lot's per-minute occupancy series matches the occupancy the simulator knows to
+ * be true.
+ *
+ * Usage: java ParkingSimulator [capacity=20000] [days=7] [load=0.6]
+ *          [dwell=EXPONENTIAL|LOGNORMAL|MIXED] [meanDwell=180]
+ *          [strategies=LINEAR,QUADRATIC,DOUBLE_HASHING,ROBIN_HOOD] [seed=50]
+ *   load is the mean offered load as a fraction of capacity, meanDwell in minutes
+ */
+public class ParkingSimulator {
+
+    private static final long MINUTE = 60_000;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final int LATENCY_SAMPLE = 8; // time one operation in this many
+
+    // ------------------------------------------------------
+    // Dwell-time distributions, all scaled to a given mean.
+    // MIXED is short errands (exponential, mean/8) plus
+    // commuters parked most of a working day (lognormal)
+    // ------------------------------------------------------
+    enum Dwell {
+        EXPONENTIAL, LOGNORMAL, MIXED;
+
+        private static final double SIGMA = 0.8;
+        private static final double COMMUTER_SIGMA = 0.3;
+        private static final double ERRANDS = 0.4;
+
+        long sampleMillis(SplittableRandom random, double meanMinutes) {
+            double minutes = switch (this) {
+                case EXPONENTIAL -> exponential(random, meanMinutes);
+                case LOGNORMAL -> lognormal(random, meanMinutes, SIGMA);
+                case MIXED -> random.nextDouble() < ERRANDS
+                        ? exponential(random, meanMinutes / 8)
+                        : lognormal(random, (meanMinutes - ERRANDS * meanMinutes / 8) / (1 - ERRANDS), COMMUTER_SIGMA);
+            };
+            return Math.max(1_000, (long) (minutes * MINUTE));
+        }
+
+        private static double exponential(SplittableRandom random, double mean) {
+            return -mean * Math.log(1 - random.nextDouble());
+        }
+
+        // mu chosen so the mean, not the median, comes out at mean
+        private static double lognormal(SplittableRandom random, double mean, double sigma) {
+            double mu = Math.log(mean) - sigma * sigma / 2;
+            return Math.exp(mu + sigma * gaussian(random));
+        }
+
+        private static double gaussian(SplittableRandom random) {
+            double u = 1 - random.nextDouble();
+            return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+        }
+    }
+
+    // Relative arrival rate per hour of day: overnight trickle, morning and evening peaks
+    private static final double[] HOURLY_RATE = {
+            0.10, 0.05, 0.05, 0.05, 0.10, 0.30, 0.90, 2.20, 2.60, 1.80, 1.20, 1.30,
+            1.60, 1.40, 1.10, 1.10, 1.40, 1.90, 1.70, 1.10, 0.70, 0.50, 0.30, 0.20};
+    private static final double HOURLY_MEAN = Arrays.stream(HOURLY_RATE).average().orElse(1);
+    private static final double HOURLY_MAX = Arrays.stream(HOURLY_RATE).max().orElse(1);
+
+    // ------------------------------------------------------
+    // Pending events as one long each in a binary min-heap:
+    // [time in ms since start : 41][vehicle : 22]. Vehicle
+    // ARRIVAL marks the single pending arrival; ties go to
+    // the lower vehicle number, so runs are reproducible
+    // ------------------------------------------------------
+    static final class EventQueue {
+        static final int VEHICLE_BITS = 22;
+        static final int ARRIVAL = (1 << VEHICLE_BITS) - 1;
+        private static final long VEHICLE_MASK = (1L << VEHICLE_BITS) - 1;
+
+        private long[] heap = new long[1024];
+        private int size = 0;
+
+        void push(long timeMillis, int vehicle) {
+            if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+            long event = timeMillis << VEHICLE_BITS | vehicle;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= event) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = event;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                if (last <= heap[child]) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            if (size > 0) heap[i] = last;
+            return top;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        static long time(long event) {
+            return event >>> VEHICLE_BITS;
+        }
+
+        static int vehicle(long event) {
+            return (int) (event & VEHICLE_MASK);
+        }
+    }
+
+    // --- Ground truth the lot's own statistics are checked against ---
+    static final class Occupancy {
+        private final long[] minuteLevelMillis;  // occupancy integrated over each minute
+        private final long[] levelCounts;        // minutes by mean occupancy, rounded
+        private int level = 0;
+        private int peak = 0;
+        private int firstMinute = -1;  // the series starts at the first event too
+        private long levelSince = 0;
+        long arrivals = 0;
+        long departures = 0;
+        long turnedAway = 0;
+
+        Occupancy(int minutes, int capacity) {
+            minuteLevelMillis = new long[minutes];
+            levelCounts = new long[capacity + 1];
+        }
+
+        void change(long timeMillis, int delta) {
+            if (firstMinute < 0) levelSince = (firstMinute = (int) (timeMillis / MINUTE)) * MINUTE;
+            integrateTo(timeMillis);
+            level += delta;
+            peak = Math.max(peak, level);
+        }
+
+        // Adds the current level up to timeMillis, split at minute boundaries
+        private void integrateTo(long timeMillis) {
+            while (levelSince < timeMillis) {
+                long boundary = Math.min(timeMillis, (levelSince / MINUTE + 1) * MINUTE);
+                minuteLevelMillis[(int) (levelSince / MINUTE)] += level * (boundary - levelSince);
+                levelSince = boundary;
+            }
+        }
+
+        void finish(long endMillis) {
+            integrateTo(endMillis);
+            for (int m = firstMinute; m < minuteLevelMillis.length; m++) {
+                levelCounts[(int) Math.round(minuteLevelMillis[m] / (double) MINUTE)]++;
+            }
+        }
+
+        int minutes() {
+            return minuteLevelMillis.length - firstMinute;
+        }
+
+        double meanOccupancy() {
+            long sum = 0;
+            for (int m = firstMinute; m < minuteLevelMillis.length; m++) sum += minuteLevelMillis[m];
+            return sum / (minutes() * (double) MINUTE);
+        }
+
+        int percentile(double q) {
+            long rank = Math.max(1, (long) Math.ceil(q * minutes()));
+            long seen = 0;
+            for (int l = 0; l < levelCounts.length; l++) {
+                seen += levelCounts[l];
+                if (seen >= rank) return l;
+            }
+            return 0;
+        }
+
+        int peak() {
+            return peak;
+        }
+    }
+
+    // ------------------------------------------------------
+    // One simulated run against a fresh lot
+    // ------------------------------------------------------
+    static final class Run {
+        final ParkingLotSystem.Probing strategy;
+        final int capacity;
+        final int days;
+        final double load;
+        final Dwell dwell;
+        final double meanDwellMinutes;
+        final long seed;
+
+        private final long epoch;  // local midnight of a Monday; simulated time counts from here
+        private long now = 0;
+
+        long events;
+        long wallNanos;
+        ParkingLotSystem lot;
+        Occupancy truth;
+        ParkingLotSystem.ProbeHistogram walks;
+        final LatencyHistogram parkLatency = new LatencyHistogram();
+        final LatencyHistogram exitLatency = new LatencyHistogram();
+
+        Run(ParkingLotSystem.Probing strategy, int capacity, int days, double load, Dwell dwell,
+            double meanDwellMinutes, long seed) {
+            if ((long) days * DAY >= 1L << (63 - EventQueue.VEHICLE_BITS)) throw new IllegalArgumentException("too many days");
+            if (4L * capacity >= EventQueue.ARRIVAL) throw new IllegalArgumentException("capacity too large");
+            this.strategy = strategy;
+            this.capacity = capacity;
+            this.days = days;
+            this.load = load;
+            this.dwell = dwell;
+            this.meanDwellMinutes = meanDwellMinutes;
+            this.seed = seed;
+            this.epoch = LocalDate.of(2026, 10, 12).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        // Non-homogeneous Poisson process by thinning: candidates at the peak rate,
+        // each kept with probability rate(t) / peak rate
+        private long nextArrival(SplittableRandom random, long from, double baseRatePerMilli) {
+            double peakRate = baseRatePerMilli * HOURLY_MAX;
+            long t = from;
+            while (true) {
+                t += Math.max(1, (long) (-Math.log(1 - random.nextDouble()) / peakRate));
+                int hour = (int) (t % DAY / (60 * MINUTE));
+                if (random.nextDouble() * HOURLY_MAX < HOURLY_RATE[hour]) return t;
+            }
+        }
+
+        Run execute() {
+            int minutes = days * 24 * 60;
+            long end = days * DAY;
+            // One spare minute: reading the series at the end moves it on to minute `minutes`
+            lot = new ParkingLotSystem(capacity, strategy, () -> epoch + now, minutes + 1);
+            truth = new Occupancy(minutes, capacity);
+            walks = new ParkingLotSystem.ProbeHistogram(capacity);
+
+            // Plates are made up front and recycled through a FIFO, so the event
+            // loop allocates nothing of its own; four per spot keeps homes mixed
+            int vehicles = 4 * capacity;
+            String[] plates = new String[vehicles];
+            for (int v = 0; v < vehicles; v++) plates[v] = String.format("SIM-%07d", v);
+            int[] idle = new int[vehicles];
+            for (int v = 0; v < vehicles; v++) idle[v] = v;
+            int idleHead = 0;
+            int idleCount = vehicles;
+
+            // Mean arrival rate for the offered load; the hourly profile redistributes it over the day
+            double baseRate = load * capacity / (meanDwellMinutes * MINUTE) / HOURLY_MEAN;
+            SplittableRandom random = new SplittableRandom(seed);
+            EventQueue queue = new EventQueue();
+            queue.push(nextArrival(random, 0, baseRate), EventQueue.ARRIVAL);
+
+            long start = System.nanoTime();
+            while (!queue.isEmpty()) {
+                long event = queue.pop();
+                now = EventQueue.time(event);
+                if (now >= end) break;
+                int vehicle = EventQueue.vehicle(event);
+                boolean timed = (++events & (LATENCY_SAMPLE - 1)) == 0;
+
+                if (vehicle == EventQueue.ARRIVAL) {
+                    queue.push(nextArrival(random, now, baseRate), EventQueue.ARRIVAL);
+                    vehicle = idle[idleHead];
+                    idleHead = (idleHead + 1) % vehicles;
+                    idleCount--;
+
+                    long t0 = timed ? System.nanoTime() : 0;
+                    String result = lot.parkVehicle(plates[vehicle]);
+                    if (timed) parkLatency.record(System.nanoTime() - t0);
+
+                    if (result.charAt(0) == 'A') {  // "Assigned spot #N (k probes...)"
+                        walks.record(lot.getLastParkProbes());
+                        truth.arrivals++;
+                        truth.change(now, +1);
+                        queue.push(now + dwell.sampleMillis(random, meanDwellMinutes), vehicle);
+                    } else {
+                        // Full: the lot records nothing for a vehicle it turns away
+                        truth.turnedAway++;
+                        idle[(idleHead + idleCount++) % vehicles] = vehicle;
+                    }
+                } else {
+                    long t0 = timed ? System.nanoTime() : 0;
+                    lot.exitVehicle(plates[vehicle]);
+                    if (timed) exitLatency.record(System.nanoTime() - t0);
+
+                    truth.departures++;
+                    truth.change(now, -1);
+                    idle[(idleHead + idleCount++) % vehicles] = vehicle;
+                }
+            }
+            wallNanos = System.nanoTime() - start;
+            now = end;
+            truth.finish(end);
+            return this;
+        }
+
+        double eventsPerSecond() {
+            return events / (wallNanos / 1e9);
+        }
+
+        /** The lot's view of the whole run, from its per-minute series */
+        ParkingLotSystem.WindowStats reported() {
+            return lot.getWindowStats(epoch, epoch + days * DAY);
+        }
+
+        /** Fields where the lot's series disagrees with ground truth; empty when exact */
+        String mismatches() {
+            ParkingLotSystem.WindowStats s = reported();
+            StringBuilder out = new StringBuilder();
+            if (s.arrivals != truth.arrivals) out.append(" arrivals ").append(s.arrivals).append("≠").append(truth.arrivals);
+            if (s.departures != truth.departures) out.append(" departures ").append(s.departures).append("≠").append(truth.departures);
+            if (s.peakOccupancy != truth.peak()) out.append(" peak ").append(s.peakOccupancy).append("≠").append(truth.peak());
+            if (Math.abs(s.meanOccupancy - truth.meanOccupancy()) > 1e-6) {
+                out.append(String.format(" mean %.3f≠%.3f", s.meanOccupancy, truth.meanOccupancy()));
+            }
+            for (double q : new double[]{0.50, 0.95, 0.99}) {
+                if (s.occupancyPercentile(q) != truth.percentile(q)) {
+                    out.append(" p").append((int) (q * 100)).append(' ').append(s.occupancyPercentile(q))
+                            .append("≠").append(truth.percentile(q));
+                }
+            }
+            return out.toString();
+        }
+    }
+
+    // --- Argument helpers, as in CacheTraceSimulator ---
+    private static String arg(String[] args, String key, String fallback) {
+        for (String a : args) {
+            if (a.startsWith(key + "=")) return a.substring(key.length() + 1);
+        }
+        return fallback;
+    }
+
+    public static void main(String[] args) {
+        int capacity = Integer.parseInt(arg(args, "capacity", "20000"));
+        int days = Integer.parseInt(arg(args, "days", "7"));
+        double load = Double.parseDouble(arg(args, "load", "0.6"));
+        Dwell dwell = Dwell.valueOf(arg(args, "dwell", "MIXED"));
+        double meanDwell = Double.parseDouble(arg(args, "meanDwell", "180"));
+        String[] strategies = arg(args, "strategies", "LINEAR,QUADRATIC,DOUBLE_HASHING,ROBIN_HOOD").split(",");
+        long seed = Long.parseLong(arg(args, "seed", "50"));
+
+        // One simulated day per strategy first, so the reported runs are compiled code
+        for (String name : strategies) {
+            new Run(ParkingLotSystem.Probing.valueOf(name.trim()), capacity, 1, load, dwell, meanDwell, seed - 1).execute();
+        }
+
+        System.out.printf("=== %,d spots, %d days, offered load %.0f%%, %s dwell (mean %.0f min) ===%n",
+                capacity, days, load * 100, dwell.name().toLowerCase(), meanDwell);
+        System.out.printf("%-15s %10s %8s %7s %14s %14s %15s %15s%n", "strategy", "events", "Mev/s", "full",
+                "walk mean/p99", "stay p50/p99", "park p50/p99", "exit p50/p99");
+
+        Run first = null;
+        for (String name : strategies) {
+            Run run = new Run(ParkingLotSystem.Probing.valueOf(name.trim()), capacity, days, load, dwell, meanDwell, seed)
+                    .execute();
+            if (first == null) first = run;
+            ParkingLotSystem.ProbeHistogram stays = run.lot.getProbeHistogram();
+            LatencyHistogram.Summary park = run.parkLatency.summary();
+            LatencyHistogram.Summary exit = run.exitLatency.summary();
+            System.out.printf("%-15s %,10d %8.2f %6.2f%% %14s %14s %15s %15s%n", name.trim().toLowerCase(),
+                    run.events, run.eventsPerSecond() / 1e6, run.truth.turnedAway * 100.0 / (run.truth.arrivals + run.truth.turnedAway),
+                    String.format("%.2f/%d", run.walks.mean(), run.walks.percentile(0.99)),
+                    String.format("%d/%d", stays.percentile(0.50), stays.percentile(0.99)),
+                    LatencyHistogram.Summary.format(park.p50Nanos) + "/"
+                            + LatencyHistogram.Summary.format(park.p99Nanos),
+                    LatencyHistogram.Summary.format(exit.p50Nanos) + "/"
+                            + LatencyHistogram.Summary.format(exit.p99Nanos));
+            String mismatches = run.mismatches();
+            if (!mismatches.isEmpty()) System.out.println("  occupancy series disagrees:" + mismatches);
+        }
+
+        // Same traffic for every strategy, so one accuracy report covers them all
+        System.out.println();
+        System.out.println("Occupancy accuracy (" + first.strategy.name().toLowerCase() + ")");
+        System.out.println("  lot series:   " + first.reported());
+        System.out.printf("  ground truth: %d min, %d in / %d out, occupancy mean %.1f, p50 %d, p95 %d, peak %d%n",
+                first.truth.minutes(), first.truth.arrivals, first.truth.departures,
+                first.truth.meanOccupancy(), first.truth.percentile(0.50), first.truth.percentile(0.95),
+                first.truth.peak());
+        System.out.println(first.mismatches().isEmpty() ? "  series matches ground truth exactly"
+                : "  series disagrees:" + first.mismatches());
+    }
+}
@@ -0,0 +1,210 @@
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block compressor for cache records. Codecs are stateless and thread-safe; the
+ * caller keeps the raw length and hands it back for decompression.
+ */
+public interface PayloadCodec {
+
+    String name();
+
+    byte[] compress(byte[] raw);
+
+    /** Decompresses input[offset..] into exactly rawLength bytes */
+    byte[] decompress(byte[] input, int offset, int rawLength);
+
+    static PayloadCodec deflate(int level) {
+        return new Deflate(level);
+    }
+
+    static PayloadCodec lz() {
+        return Lz.INSTANCE;
+    }
+
+    // --- java.util.zip DEFLATE at a fixed level (1 = fastest, 9 = smallest) ---
+    final class Deflate implements PayloadCodec {
+        private final int level;
+
+        Deflate(int level) {
+            this.level = level;
+        }
+
+        public String name() {
+            return "deflate-" + level;
+        }
+
+        public byte[] compress(byte[] raw) {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                byte[] out = new byte[raw.length + raw.length / 1000 + 64];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == out.length) out = Arrays.copyOf(out, out.length * 2);
+                    length += deflater.deflate(out, length, out.length - length);
+                }
+                return Arrays.copyOf(out, length);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        public byte[] decompress(byte[] input, int offset, int rawLength) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(input, offset, input.length - offset);
+                byte[] out = new byte[rawLength];
+                int length = 0;
+                while (length < rawLength) {
+                    int n = inflater.inflate(out, length, rawLength - length);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) break;
+                    length += n;
+                }
+                if (length != rawLength) throw new IllegalStateException("truncated deflate record");
+                return out;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("corrupt deflate record", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    // ------------------------------------------------------
+    // Fast LZ77 codec in the style of LZ4: greedy matching via
+    // a hash of the next 4 bytes, no entropy coding. Sequence:
+    // [token: literals<<4 | (matchLength-4)][extra literal
+    // length bytes][literals][2-byte offset][extra match bytes];
+    // the final sequence has literals only
+    // ------------------------------------------------------
+    final class Lz implements PayloadCodec {
+        static final Lz INSTANCE = new Lz();
+
+        private static final int MIN_MATCH = 4;
+        private static final int HASH_BITS = 12;
+        private static final int MAX_OFFSET = 65_535;
+
+        private Lz() {
+        }
+
+        public String name() {
+            return "lz";
+        }
+
+        private static int read32(byte[] b, int i) {
+            return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+        }
+
+        private static int hash(int fourBytes, int bits) {
+            return (fourBytes * 0x9E3779B1) >>> (32 - bits);
+        }
+
+        public byte[] compress(byte[] raw) {
+            int n = raw.length;
+            byte[] out = new byte[n + n / 255 + 16];
+            // Table sized to the input so small records do not pay for clearing a large one
+            int bits = Math.max(8, Math.min(HASH_BITS, 32 - Integer.numberOfLeadingZeros(n)));
+            int[] table = new int[1 << bits];  // position + 1, 0 = empty
+            int op = 0;
+            int anchor = 0;
+            int i = 0;
+
+            while (i + MIN_MATCH <= n) {
+                int current = read32(raw, i);
+                int h = hash(current, bits);
+                int ref = table[h] - 1;
+                table[h] = i + 1;
+
+                if (ref < 0 || i - ref > MAX_OFFSET || read32(raw, ref) != current) {
+                    i++;
+                    continue;
+                }
+
+                int length = MIN_MATCH;
+                while (i + length < n && raw[ref + length] == raw[i + length]) length++;
+
+                op = writeSequence(out, op, raw, anchor, i - anchor, i - ref, length);
+                i += length;
+                anchor = i;
+            }
+            op = writeSequence(out, op, raw, anchor, n - anchor, 0, 0);
+            return Arrays.copyOf(out, op);
+        }
+
+        private static int writeSequence(byte[] out, int op, byte[] raw, int literalStart, int literals,
+                                         int offset, int matchLength) {
+            int tokenAt = op++;
+            int literalNibble = Math.min(literals, 15);
+            op = writeLength(out, op, literals - 15, literals >= 15);
+            System.arraycopy(raw, literalStart, out, op, literals);
+            op += literals;
+
+            int matchNibble = 0;
+            if (matchLength > 0) {
+                out[op++] = (byte) offset;
+                out[op++] = (byte) (offset >>> 8);
+                int extra = matchLength - MIN_MATCH;
+                matchNibble = Math.min(extra, 15);
+                op = writeLength(out, op, extra - 15, extra >= 15);
+            }
+            out[tokenAt] = (byte) (literalNibble << 4 | matchNibble);
+            return op;
+        }
+
+        // Lengths past the 4-bit nibble continue as 255-runs plus a final byte
+        private static int writeLength(byte[] out, int op, int remaining, boolean needed) {
+            if (!needed) return op;
+            while (remaining >= 255) {
+                out[op++] = (byte) 255;
+                remaining -= 255;
+            }
+            out[op++] = (byte) remaining;
+            return op;
+        }
+
+        public byte[] decompress(byte[] input, int offset, int rawLength) {
+            byte[] out = new byte[rawLength];
+            int ip = offset;
+            int op = 0;
+
+            while (ip < input.length) {
+                int token = input[ip++] & 0xff;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = input[ip++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(input, ip, out, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip >= input.length) break;  // last sequence has no match
+
+                int distance = (input[ip] & 0xff) | (input[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int length = token & 0x0f;
+                if (length == 15) {
+                    int b;
+                    do {
+                        b = input[ip++] & 0xff;
+                        length += b;
+                    } while (b == 255);
+                }
+                length += MIN_MATCH;
+
+                // Byte by byte: the match may overlap the bytes it is producing
+                int from = op - distance;
+                for (int k = 0; k < length; k++) out[op++] = out[from + k];
+            }
+            if (op != rawLength) throw new IllegalStateException("corrupt lz record");
+            return out;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Off-heap chunk allocator for cache payloads.
+ *
+ * Memory is reserved as fixed-size direct ByteBuffer slabs, up to a byte budget.
+ * A slab is handed to one size class (powers of two from 64 bytes up to the slab
+ * size) the first time that class runs dry and is carved into equal chunks. Freed
+ * chunks go back on their class's free list, so steady-state allocation touches
+ * neither the Java heap nor the garbage collector. Like memcached, a slab never
+ * changes size class once assigned.
+ *
+ * Chunk layout: [int generation][payload]. Freeing a chunk bumps its generation,
+ * which lets anyone still holding a Chunk detect that it now points at recycled memory.
+ */
+public class SlabAllocator {
+
+    public static final int DEFAULT_SLAB_BYTES = 1 << 20;
+    static final int MIN_CHUNK_BYTES = 64;
+    static final int HEADER_BYTES = 4;
+
+    // Acquire/release access to the generation word inside a direct buffer
+    private static final VarHandle GENERATION =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    // Handle to one allocated chunk; the only part of a payload that lives on the heap
+    public static final class Chunk {
+        final SizeClass owner;
+        final ByteBuffer slab;
+        final int id;
+        final int offset;
+        final int generation;
+
+        Chunk(SizeClass owner, ByteBuffer slab, int id, int offset, int generation) {
+            this.owner = owner;
+            this.slab = slab;
+            this.id = id;
+            this.offset = offset;
+            this.generation = generation;
+        }
+
+        public int capacity() {
+            return owner.chunkSize - HEADER_BYTES;
+        }
+
+        public boolean isLive() {
+            return (int) GENERATION.getAcquire(slab, offset) == generation;
+        }
+
+        public void write(byte[] payload) {
+            slab.put(offset + HEADER_BYTES, payload);
+        }
+
+        // Zero-copy, read-only view of the first length payload bytes; only valid until the chunk is freed
+        public ByteBuffer view(int length) {
+            if (!isLive()) throw new IllegalStateException("chunk was freed and recycled");
+            return slab.slice(offset + HEADER_BYTES, length).asReadOnlyBuffer();
+        }
+
+        // After reading through a view: true if the chunk was not freed meanwhile, so the bytes read were this owner's
+        public boolean validate() {
+            VarHandle.acquireFence();
+            return isLive();
+        }
+
+        // Copies the payload out; fails if the chunk was freed before the copy completed
+        public void read(byte[] target) {
+            slab.get(offset + HEADER_BYTES, target);
+            VarHandle.acquireFence();
+            if (!isLive()) throw new IllegalStateException("chunk was freed and recycled");
+        }
+    }
+
+    // One size class: its slabs and a stack of free chunk ids (slab * chunksPerSlab + n)
+    static final class SizeClass {
+        final int chunkSize;
+        final int chunksPerSlab;
+        final List<ByteBuffer> slabs = new ArrayList<>();
+        int[] free = new int[16];
+        int freeCount = 0;
+
+        SizeClass(int chunkSize, int slabBytes) {
+            this.chunkSize = chunkSize;
+            this.chunksPerSlab = slabBytes / chunkSize;
+        }
+
+        void push(int id) {
+            if (freeCount == free.length) {
+                int[] grown = new int[free.length * 2];
+                System.arraycopy(free, 0, grown, 0, freeCount);
+                free = grown;
+            }
+            free[freeCount++] = id;
+        }
+    }
+
+    private final int slabBytes;
+    private final int maxSlabs;
+    private final SizeClass[] classes;
+    private final AtomicInteger slabsReserved = new AtomicInteger();
+
+    // Statistics
+    private final LongAdder bytesInUse = new LongAdder();
+    private final LongAdder allocationFailures = new LongAdder();
+
+    public SlabAllocator(long maxBytes, int slabBytes) {
+        this.slabBytes = Integer.highestOneBit(Math.max(MIN_CHUNK_BYTES, slabBytes));
+        this.maxSlabs = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / this.slabBytes));
+
+        int classCount = Integer.numberOfTrailingZeros(this.slabBytes)
+                - Integer.numberOfTrailingZeros(MIN_CHUNK_BYTES) + 1;
+        this.classes = new SizeClass[classCount];
+        for (int i = 0; i < classCount; i++) {
+            classes[i] = new SizeClass(MIN_CHUNK_BYTES << i, this.slabBytes);
+        }
+    }
+
+    /** Chunk size a payload of this many bytes occupies (may exceed the slab size) */
+    public int chunkSizeFor(int payloadBytes) {
+        int needed = Math.max(MIN_CHUNK_BYTES, payloadBytes + HEADER_BYTES);
+        return needed > (1 << 30) ? Integer.MAX_VALUE : Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    /** Chunk for a payload of this many bytes, or null if it is larger than a slab or the budget is used up */
+    public Chunk allocate(int payloadBytes) {
+        int chunkSize = chunkSizeFor(payloadBytes);
+        if (chunkSize > slabBytes) {
+            allocationFailures.increment();
+            return null;
+        }
+        SizeClass sizeClass = classes[Integer.numberOfTrailingZeros(chunkSize / MIN_CHUNK_BYTES)];
+
+        synchronized (sizeClass) {
+            if (sizeClass.freeCount == 0 && !addSlab(sizeClass)) {
+                allocationFailures.increment();
+                return null;
+            }
+            int id = sizeClass.free[--sizeClass.freeCount];
+            ByteBuffer slab = sizeClass.slabs.get(id / sizeClass.chunksPerSlab);
+            int offset = (id % sizeClass.chunksPerSlab) * chunkSize;
+            bytesInUse.add(chunkSize);
+            return new Chunk(sizeClass, slab, id, offset, (int) GENERATION.getAcquire(slab, offset));
+        }
+    }
+
+    // Caller holds the size class lock
+    private boolean addSlab(SizeClass sizeClass) {
+        int reserved;
+        do {
+            reserved = slabsReserved.get();
+            if (reserved >= maxSlabs) return false;
+        } while (!slabsReserved.compareAndSet(reserved, reserved + 1));
+
+        sizeClass.slabs.add(ByteBuffer.allocateDirect(slabBytes).order(ByteOrder.nativeOrder()));
+        int first = (sizeClass.slabs.size() - 1) * sizeClass.chunksPerSlab;
+        for (int n = sizeClass.chunksPerSlab - 1; n >= 0; n--) {
+            sizeClass.push(first + n);
+        }
+        return true;
+    }
+
+    /** Returns the chunk to its free list; false if it was already freed */
+    public boolean free(Chunk chunk) {
+        SizeClass sizeClass = chunk.owner;
+        synchronized (sizeClass) {
+            if (!chunk.isLive()) return false;
+
+            // New generation is published before the next owner can write the payload
+            GENERATION.setRelease(chunk.slab, chunk.offset, chunk.generation + 1);
+            VarHandle.storeStoreFence();
+            sizeClass.push(chunk.id);
+        }
+        bytesInUse.add(-sizeClass.chunkSize);
+        return true;
+    }
+
+    // ---------------------------------------------
+    // Statistics
+    // ---------------------------------------------
+    public int slabCount() {
+        return slabsReserved.get();
+    }
+
+    public long reservedBytes() {
+        return (long) slabsReserved.get() * slabBytes;
+    }
+
+    public long bytesInUse() {
+        return bytesInUse.sum();
+    }
+
+    public long allocationFailures() {
+        return allocationFailures.sum();
+    }
+}
@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only key/value log on memory-mapped segment files.
+ *
+ * Every put appends a record to the active segment; an in-memory index maps
+ * each key to the latest record. Removed and overwritten records become dead
+ * bytes, and a background compactor copies the live records out of mostly-dead
+ * sealed segments and deletes their files.
+ *
+ * A deleted file keeps its disk space while it is still mapped, so compaction
+ * also unmaps the segments it retires, as soon as no reader is inside them.
+ * Readers pin a segment for the length of a read; a read that finds its
+ * segment retired looks the key up again and follows the moved record. If
+ * the JDK does not allow explicit unmapping, the mapping goes away when the
+ * buffer is garbage collected, and so does the space.
+ *
+ * Record layout: [int keyLength][int valueLength][key UTF-8][value]
+ */
+public class VideoDiskStore implements AutoCloseable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final double COMPACTION_DEAD_RATIO = 0.5;
+
+    // Where a live record sits
+    static final class Location {
+        final LogSegment segment;
+        final int offset;
+        final int length; // whole record, header included
+
+        Location(LogSegment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    // One mapped file; only the active segment is written
+    static final class LogSegment {
+        final int id;
+        final Path file;
+        final MappedByteBuffer buffer;
+        final LongAdder deadBytes = new LongAdder();
+        int writePosition = 0; // guarded by the store's append lock
+
+        // Threads reading the mapping, and whether compaction has retired it
+        private final AtomicInteger readers = new AtomicInteger();
+        private volatile boolean retired;
+
+        LogSegment(int id, Path file, int size) throws IOException {
+            this.id = id;
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        // ------------------------------------------------------
+        // A reader announces itself before checking retired, and
+        // the compactor sets retired before counting readers, so
+        // either the reader backs off or the compactor sees it and
+        // leaves the mapping alone until a later pass
+        // ------------------------------------------------------
+        boolean pin() {
+            readers.incrementAndGet();
+            if (!retired) return true;
+            readers.decrementAndGet();
+            return false;
+        }
+
+        void unpin() {
+            readers.decrementAndGet();
+        }
+
+        void retire() {
+            retired = true;
+        }
+
+        boolean inUse() {
+            return readers.get() > 0;
+        }
+    }
+
+    // Unmaps a buffer now rather than at garbage collection; both null if the JDK does not allow it
+    private static final Object UNSAFE;
+    static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe;
+        Method invokeCleaner;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    private final List<LogSegment> sealed = new ArrayList<>(); // guarded by this
+    private final List<LogSegment> retired = new ArrayList<>(); // compacted, still mapped; guarded by this
+    private LogSegment active;                                  // guarded by this
+    private int nextSegmentId = 0;
+
+    private final ScheduledExecutorService compactor;
+
+    // Statistics
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder segmentsCompacted = new LongAdder();
+
+    private VideoDiskStore(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            this.active = newSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "video-disk-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // --- Store in directory, compacting every compactionIntervalMillis ---
+    public static VideoDiskStore open(Path directory, int segmentSize, long compactionIntervalMillis) {
+        VideoDiskStore store = new VideoDiskStore(directory, segmentSize);
+        store.compactor.scheduleWithFixedDelay(store::compact,
+                compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        return store;
+    }
+
+    // --- Temporary store, deleted on close() ---
+    public static VideoDiskStore createTemp(String prefix) {
+        return createTemp(prefix, 64 * 1024 * 1024, 5_000);
+    }
+
+    public static VideoDiskStore createTemp(String prefix, int segmentSize, long compactionIntervalMillis) {
+        try {
+            return open(Files.createTempDirectory(prefix), segmentSize, compactionIntervalMillis);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private LogSegment newSegment() throws IOException {
+        int id = nextSegmentId++;
+        return new LogSegment(id, directory.resolve(String.format("segment-%06d.log", id)), segmentSize);
+    }
+
+    /** Appends a record and points the index at it; false if the value can never fit a segment */
+    public boolean put(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_BYTES + keyBytes.length + value.length;
+        if (length > segmentSize) return false;
+
+        synchronized (this) {
+            // Index updated under the append lock so the later record always wins
+            markDead(index.put(key, append(keyBytes, value)));
+        }
+        bytesWritten.add(length);
+        return true;
+    }
+
+    // Caller holds the lock; rolls to a new segment when the active one is full
+    private Location append(byte[] keyBytes, byte[] value) {
+        int length = HEADER_BYTES + keyBytes.length + value.length;
+        if (active.writePosition + length > segmentSize) {
+            sealed.add(active);
+            try {
+                active = newSegment();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int offset = active.writePosition;
+        active.buffer.putInt(offset, keyBytes.length);
+        active.buffer.putInt(offset + 4, value.length);
+        active.buffer.put(offset + HEADER_BYTES, keyBytes);
+        active.buffer.put(offset + HEADER_BYTES + keyBytes.length, value);
+        active.writePosition += length;
+        return new Location(active, offset, length);
+    }
+
+    /** Reads the latest value for key, or null */
+    public byte[] get(String key) {
+        while (true) {
+            Location location = index.get(key);
+            if (location == null) return null;
+
+            LogSegment segment = location.segment;
+            if (!segment.pin()) continue; // compacted meanwhile; the index points at the moved record
+            try {
+                int keyLength = segment.buffer.getInt(location.offset);
+                int valueLength = segment.buffer.getInt(location.offset + 4);
+
+                byte[] value = new byte[valueLength];
+                segment.buffer.get(location.offset + HEADER_BYTES + keyLength, value);
+                bytesRead.add(location.length);
+                return value;
+            } finally {
+                segment.unpin();
+            }
+        }
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public synchronized void remove(String key) {
+        markDead(index.remove(key));
+    }
+
+    private void markDead(Location location) {
+        if (location != null) location.segment.deadBytes.add(location.length);
+    }
+
+    // ---------------------------------------------
+    // Compaction: rewrite live records of mostly-dead sealed segments
+    // ---------------------------------------------
+    public void compact() {
+        List<LogSegment> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (LogSegment segment : sealed) {
+                if (segment.deadBytes.sum() >= segment.writePosition * COMPACTION_DEAD_RATIO) {
+                    candidates.add(segment);
+                }
+            }
+        }
+
+        for (LogSegment segment : candidates) {
+            if (!segment.pin()) continue; // a concurrent compact() already retired it
+            int offset = 0;
+            while (offset < segment.writePosition) {
+                int keyLength = segment.buffer.getInt(offset);
+                int valueLength = segment.buffer.getInt(offset + 4);
+                int length = HEADER_BYTES + keyLength + valueLength;
+
+                byte[] keyBytes = new byte[keyLength];
+                segment.buffer.get(offset + HEADER_BYTES, keyBytes);
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
+
+                Location current = index.get(key);
+                if (current != null && current.segment == segment && current.offset == offset) {
+                    byte[] value = new byte[valueLength];
+                    segment.buffer.get(offset + HEADER_BYTES + keyLength, value);
+                    relocate(key, current, value);
+                }
+                offset += length;
+            }
+
+            synchronized (this) {
+                sealed.remove(segment);
+                segment.retire();
+                if (INVOKE_CLEANER != null) retired.add(segment);
+            }
+            segment.unpin();
+            // The space comes back once the segment is unmapped below, or on a later pass
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException ignored) {
+                // best effort, the file is orphaned but unreachable
+            }
+            segmentsCompacted.increment();
+        }
+        unmapRetired();
+    }
+
+    // Unmaps retired segments no reader is inside; the rest wait for the next pass
+    private synchronized void unmapRetired() {
+        retired.removeIf(segment -> {
+            if (segment.inUse()) return false;
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, segment.buffer);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("video-disk-compactor: unmap of " + segment.file + " failed: " + e);
+            }
+            return true;
+        });
+    }
+
+    // Only moves the record if nobody overwrote or removed it meanwhile
+    private void relocate(String key, Location old, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        synchronized (this) {
+            if (index.get(key) != old) return;
+
+            Location moved = append(keyBytes, value);
+            bytesWritten.add(moved.length);
+            index.put(key, moved);
+        }
+    }
+
+    // ---------------------------------------------
+    // Statistics
+    // ---------------------------------------------
+    public int size() {
+        return index.size();
+    }
+
+    public synchronized int segmentCount() {
+        return sealed.size() + 1;
+    }
+
+    public long bytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long bytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long segmentsCompacted() {
+        return segmentsCompacted.sum();
+    }
+
+    // Compacted segments whose mapping, and so disk space, is still held by a reader
+    synchronized int retiredStillMapped() {
+        return retired.size();
+    }
+
+    // --- Stops compaction and deletes every segment file; live segments are unmapped by the GC ---
+    @Override
+    public synchronized void close() {
+        compactor.shutdownNow();
+        index.clear();
+        List<LogSegment> all = new ArrayList<>(sealed);
+        all.add(active);
+        for (LogSegment segment : all) {
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException ignored) {
+                // best effort cleanup
+            }
+        }
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException ignored) {
+            // directory not empty or already gone
+        }
+    }
+}